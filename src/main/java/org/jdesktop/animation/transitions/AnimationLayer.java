@@ -37,6 +37,7 @@ import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
 
 import javax.swing.JComponent;
 import javax.swing.JLayeredPane;
@@ -60,6 +61,10 @@ class AnimationLayer extends JComponent {
     private Point componentLocationInLayeredPane;
     private Rectangle visibleRectInLayeredPane;
 
+    // Scratch rectangles, reused on every frame
+    private final Rectangle repaintRect = new Rectangle();
+    private final Rectangle clipRect = new Rectangle();
+
     /**
      * Construct the AnimationLayer with a reference to the ScreenTransition object, which will be used later at
      * paintComponent() time
@@ -96,9 +101,28 @@ class AnimationLayer extends JComponent {
         return new Point(x, y);
     }
 
+    /**
+     * Called from ScreenTransition after a frame has been rendered, to repaint only the part of this layer that changed.
+     *
+     * @param region
+     *            the changed area in the coordinate space of the transition container
+     */
+    void repaintTransitionRegion(Rectangle region) {
+        if (region.isEmpty()) {
+            return;
+        }
+        repaintRect.setBounds(region);
+        repaintRect.translate(componentLocationInLayeredPane.x, componentLocationInLayeredPane.y);
+        Rectangle2D.intersect(repaintRect, visibleRectInLayeredPane, repaintRect);
+        if (!repaintRect.isEmpty()) {
+            repaint(repaintRect.x, repaintRect.y, repaintRect.width, repaintRect.height);
+        }
+    }
+
     /**
      * Called during the Swing repaint process for this component. This simply copies the transitionImage from
-     * ScreenTransition into the appropriate location in the layered pane.
+     * ScreenTransition into the appropriate location in the layered pane. Only the part of the image inside the current
+     * clip is copied.
      */
     @Override
     public void paintComponent(Graphics g) {
@@ -107,8 +131,17 @@ class AnimationLayer extends JComponent {
                    visibleRectInLayeredPane.width,
                    visibleRectInLayeredPane.height);
 
+        // The transition image only covers part of the container
         Image transitionImage = screenTransition.getTransitionImage();
-        g.translate(componentLocationInLayeredPane.x, componentLocationInLayeredPane.y);
-        g.drawImage(transitionImage, 0, 0, null);
+        Rectangle imageBounds = screenTransition.getTransitionImageBounds();
+        g.translate(componentLocationInLayeredPane.x + imageBounds.x, componentLocationInLayeredPane.y + imageBounds.y);
+        g.getClipBounds(clipRect);
+        int x1 = Math.max(clipRect.x, 0);
+        int y1 = Math.max(clipRect.y, 0);
+        int x2 = Math.min(clipRect.x + clipRect.width, transitionImage.getWidth(null));
+        int y2 = Math.min(clipRect.y + clipRect.height, transitionImage.getHeight(null));
+        if (x1 < x2 && y1 < y2) {
+            g.drawImage(transitionImage, x1, y1, x2, y2, x1, y1, x2, y2, null);
+        }
     }
 }
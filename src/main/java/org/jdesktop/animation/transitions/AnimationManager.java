@@ -35,12 +35,14 @@ package org.jdesktop.animation.transitions;
 
 import java.awt.Component;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import javax.swing.JComponent;
 
@@ -52,9 +54,8 @@ import org.jdesktop.core.animation.timing.Animator;
  * . Information for the start and end states are stored in individual <code>AnimationState</code> objects on a
  * per-component basis.
  * <p/>
- * During the transition, animation timing events trigger calls to {@link #paint(Graphics g)}, which asks each of the
- * <code>
- * AnimationState</code> structures to render themselves in their current, animating state.
+ * During the transition, animation timing events trigger calls to {@link #paint(Graphics2D, Rectangle)}, which asks
+ * each of the <code>AnimationState</code> structures to render themselves in their current, animating state.
  *
  * @author Chet Haase
  */
@@ -65,11 +66,24 @@ class AnimationManager {
     // The container in which the transition will occur
     private final JComponent container;
 
-    // The set of start/end states for each component in the transition
-    private Map<JComponent, AnimationState> componentAnimationStates = new HashMap<>();
+    // The set of start/end states for each component in the transition, in
+    // z-order from the bottom to the top
+    private final StateStore componentAnimationStates = new StateStore();
 
-    // The set of components that change between their start and end states
-    private ArrayList<JComponent> changingComponents = new ArrayList<>();
+    // The AnimationStates of the running transition, collected by init() so
+    // that the frame loop can iterate over them without creating iterators
+    private AnimationState[] activeStates = new AnimationState[0];
+    private int activeStateCount;
+
+    /**
+     * The state of the frame Graphics2D before any effect rendered into it; restored after each effect.
+     */
+    private final GraphicsState baseState = new GraphicsState();
+
+    /**
+     * The single timing target that advances the animated properties of all effects of the transition.
+     */
+    private final ChannelBatch channelBatch = new ChannelBatch();
 
     /**
      * Background that will be copied into the transitionImage on every frame. This represents the default (empty) state
@@ -78,29 +92,123 @@ class AnimationManager {
      */
     private BufferedImage transitionImageBG = null;
 
-    AnimationManager(EffectsManager effectsManager, JComponent container) {
+    /**
+     * The surface that transitionImageBG is a view of; its capacity only grows when the container is resized.
+     */
+    private final GrowableSurface backgroundSurface;
+
+    /**
+     * The area of the container, in container coordinates, that transitionImageBG and the transition image cover.
+     * This is the visible area of the container when the transition started, so that the images of a container in a
+     * scroll pane are no larger than the viewport. The frames are composed in container coordinates, through a
+     * Graphics2D translated by the negated origin of this area.
+     */
+    private final Rectangle imageBounds = new Rectangle();
+
+    /**
+     * Whether frames are composed incrementally: instead of copying the whole background and rendering every
+     * AnimationState on every frame, only the background under the previous and current footprints of the effects is
+     * restored and only the AnimationStates overlapping those areas are rendered again.
+     */
+    private boolean incrementalPainting;
+
+    /**
+     * Set by init(); the first frame of a transition is always composed completely, as the transition image still
+     * holds the last frame of the previous transition.
+     */
+    private boolean fullFrameNeeded = true;
+
+    // The areas that are restored from the background in an incremental
+    // frame. The rectangles are reused from frame to frame.
+    private Rectangle[] damagedAreas = new Rectangle[0];
+    private int damagedAreaCount;
+    private final Rectangle bgBounds = new Rectangle();
+
+    /**
+     * Spatial index over the start and end bounds of the AnimationStates, built by init(). The positions of the states
+     * in the index are the same as in activeStates.
+     */
+    private final StateIndex stateIndex = new StateIndex();
+
+    /**
+     * The source of the snapshots and the atlases they are packed in.
+     */
+    private final SurfacePool snapshotPool;
+
+    /**
+     * Recycles the states and default effects of one transition for the next one.
+     */
+    private final StatePool statePool;
+
+    /**
+     * The atlas images holding the snapshots of the current transition; they are released to the snapshotPool by
+     * reset().
+     */
+    private final List<BufferedImage> atlases = new ArrayList<>();
+
+    // Snapshot statistics of the current transition: the number of component
+    // states recorded and the number of those whose snapshot was taken
+    private int recordedStateCount;
+    private int capturedSnapshotCount;
+
+    // The number of times an AnimationState was not painted during the
+    // current transition because it was covered by an opaque one above it
+    private int occludedDrawCount;
+
+    AnimationManager(EffectsManager effectsManager, JComponent container, SurfacePool bufferPool,
+            SurfacePool snapshotPool) {
         this.effectsManager = effectsManager;
         this.container = container;
-        recreateImage();
+        this.snapshotPool = snapshotPool;
+        backgroundSurface = new GrowableSurface(bufferPool, Transparency.OPAQUE);
+        statePool = new StatePool(snapshotPool);
     }
 
     /**
-     * Causes background image to be recreated if the container is not of size (0,0) and if the current image is either
-     * null or of a different size than the current container
+     * Enables or disables incremental composition of the frames.
      */
-    void recreateImage() {
-        int cw = container.getWidth();
-        int ch = container.getHeight();
-        if ((cw > 0 && ch > 0)
-            && (transitionImageBG == null || cw != transitionImageBG.getWidth() || ch != transitionImageBG.getHeight())) {
-            transitionImageBG = (BufferedImage) container.createImage(cw, ch);
-        }
+    void setIncrementalPainting(boolean incrementalPainting) {
+        this.incrementalPainting = incrementalPainting;
+    }
+
+    /**
+     * Enables or disables the smaller copies of the snapshots, for effects that draw them at a small size.
+     */
+    void setMipmappedSnapshots(boolean mipmappedSnapshots) {
+        statePool.setMipmapped(mipmappedSnapshots);
+    }
+
+    /**
+     * Causes background image to be resized to the given area of the container, which must not be empty. A new surface
+     * is only allocated if the area has outgrown the current one.
+     */
+    void recreateImage(Rectangle bounds) {
+        imageBounds.setBounds(bounds);
+        transitionImageBG = backgroundSurface.resize(ComponentState.getGraphicsConfiguration(container),
+                bounds.width,
+                bounds.height);
+    }
+
+    /**
+     * Returns the area of the container that the transition images cover.
+     */
+    Rectangle getImageBounds() {
+        return imageBounds;
+    }
+
+    /**
+     * Releases the background image while no transition is running; it is recreated by the next call to
+     * recreateImage().
+     */
+    void releaseImage() {
+        backgroundSurface.release();
+        transitionImageBG = null;
     }
 
     /**
      * Utility method, used to check whether the given component has a state set already.
      */
-    private AnimationState getExistingAnimationState(JComponent component) {
+    AnimationState getExistingAnimationState(JComponent component) {
         return componentAnimationStates.get(component);
     }
 
@@ -108,11 +216,21 @@ class AnimationManager {
      * Reset the AnimationStates; this clears out the old structure of states after we are done with a transition
      */
     void reset(Animator animator) {
-        for (AnimationState state : componentAnimationStates.values()) {
+        for (AnimationState state : componentAnimationStates) {
             state.cleanup(animator);
+            statePool.recycle(state);
         }
+        animator.removeTarget(channelBatch);
+        channelBatch.clear();
         componentAnimationStates.clear();
-        changingComponents.clear();
+        Arrays.fill(activeStates, 0, activeStateCount, null);
+        activeStateCount = 0;
+        stateIndex.clear();
+        baseState.clear();
+        for (BufferedImage atlas : atlases) {
+            snapshotPool.release(atlas);
+        }
+        atlases.clear();
     }
 
     /**
@@ -122,101 +240,181 @@ class AnimationManager {
      * render them once into the background image and skip rendering them each per-frame).
      */
     void init(Animator animator) {
-        // Create the background image for the transition if necessary
-        recreateImage();
-
         // First, make sure that we don't run animations for components
         // that aren't even visible
-        List<JComponent> componentsToRemove = new ArrayList<>();
-        for (AnimationState state : componentAnimationStates.values()) {
-            Rectangle bounds = null;
-            if (state.hasStart()) {
-                ComponentState start = state.getStart();
-                bounds = new Rectangle(start.getX(), start.getY(), start.getWidth(), start.getHeight());
-            }
-            if (state.hasEnd()) {
-                ComponentState end = state.getEnd();
-                Rectangle boundsEnd = new Rectangle(end.getX(), end.getY(), end.getWidth(), end.getHeight());
-                if (bounds == null) {
-                    bounds = boundsEnd;
-                } else {
-                    bounds = bounds.union(boundsEnd);
-                }
+        stateIndex.build(componentAnimationStates,
+                new Rectangle(0, 0, container.getWidth(), container.getHeight()));
+        stateIndex.markBounds(container.getVisibleRect());
+        for (int i = 0; i < stateIndex.size(); i++) {
+            if (!stateIndex.isMarked(i)) {
+                AnimationState state = stateIndex.get(i);
+                componentAnimationStates.removeComponent(state.getComponent());
+                statePool.recycle(state);
             }
-            Rectangle visibleComponentBounds = container.getVisibleRect();
-            if (bounds != null && !bounds.intersects(visibleComponentBounds)) {
-                componentsToRemove.add(state.getComponent());
-            }
-        }
-        for (JComponent component : componentsToRemove) {
-            componentAnimationStates.remove(component);
-            changingComponents.remove(component);
         }
+        stateIndex.retainMarked();
 
-        // Don't paint the changing components into the bg image
-        for (JComponent child : changingComponents) {
-            child.setVisible(false);
+        // Don't paint the changing components into the bg image. Those are
+        // the components of the end screen that are still animated, as the
+        // unchanged ones have been removed by setupEnd().
+        for (int i = 0; i < stateIndex.size(); i++) {
+            AnimationState state = stateIndex.get(i);
+            if (state.hasEnd()) {
+                state.getComponent().setVisible(false);
+            }
         }
 
         // Paint the background image for the transition. This will include
         // the background of the container itself, but also any components
-        // that do not change between the screens.
+        // that do not change between the screens. Only the area of the
+        // container covered by the image is painted.
         Graphics gImg = transitionImageBG.getGraphics();
         gImg.clearRect(0, 0, transitionImageBG.getWidth(), transitionImageBG.getHeight());
+        gImg.translate(-imageBounds.x, -imageBounds.y);
+        gImg.clipRect(imageBounds.x, imageBounds.y, imageBounds.width, imageBounds.height);
         ComponentState.paintHierarchySingleBuffered(container, gImg);
         gImg.dispose();
 
         // Reset visibility of changing components, now that we're done
         // painting the background
-        for (JComponent child : changingComponents) {
-            child.setVisible(true);
+        for (int i = 0; i < stateIndex.size(); i++) {
+            AnimationState state = stateIndex.get(i);
+            if (state.hasEnd()) {
+                state.getComponent().setVisible(true);
+            }
         }
 
         // Init the animation states that we're going to use
-        for (AnimationState state : componentAnimationStates.values()) {
-            state.init(animator);
+        if (activeStates.length < componentAnimationStates.size()) {
+            activeStates = new AnimationState[componentAnimationStates.size()];
+        }
+        activeStateCount = 0;
+        EffectResolver effectResolver = new EffectResolver(effectsManager, container, statePool);
+        Effect.setChannelBatch(channelBatch, animator);
+        try {
+            for (int i = 0; i < stateIndex.size(); i++) {
+                AnimationState state = stateIndex.get(i);
+                state.init(animator, effectResolver, statePool);
+                activeStates[activeStateCount++] = state;
+            }
+        } finally {
+            Effect.setChannelBatch(null, null);
+        }
+        animator.addTarget(channelBatch);
+
+        // Now that the effects are known, take the snapshots of the end
+        // states that they actually use, while the end screen is laid out.
+        // Tiled snapshots are left out; their tiles are rendered when they
+        // are first drawn, as the end screen stays laid out.
+        List<ComponentState> snapshotStates = new ArrayList<>();
+        for (int i = 0; i < activeStateCount; i++) {
+            activeStates[i].addMissingSnapshot(snapshotStates);
+        }
+        for (int i = snapshotStates.size() - 1; i >= 0; i--) {
+            if (snapshotStates.get(i).isTiled()) {
+                snapshotStates.remove(i);
+                capturedSnapshotCount++;
+            }
         }
+        SnapshotAtlas.capture(snapshotStates, container, snapshotPool, atlases);
+        capturedSnapshotCount += snapshotStates.size();
+        occludedDrawCount = 0;
+        fullFrameNeeded = true;
     }
 
     /**
-     * Save the start state for all components in this container
+     * Save the start state for all components in this container, from the bottom of the z-order to the top. Only the
+     * components that are within the visible area of the container get a snapshot; the others are recorded with their
+     * bounds only, as most of them will be culled in init() anyway. The snapshots only cover the visible part of each
+     * component, and the very large ones are split into tiles, which are all rendered now since the start screen is
+     * about to be replaced.
      */
     void setupStart() {
-        for (Component child : container.getComponents()) {
+        recordedStateCount = 0;
+        capturedSnapshotCount = 0;
+        Rectangle visibleRect = container.getVisibleRect();
+        List<ComponentState> snapshotStates = new ArrayList<>();
+        Component[] children = container.getComponents();
+        for (int i = children.length - 1; i >= 0; i--) {
+            Component child = children[i];
             if (child.isVisible() && (child instanceof JComponent)) {
-                addStart((JComponent) child);
+                ComponentState start = statePool.componentState((JComponent) child);
+                addStart(start);
+                recordedStateCount++;
+                if (child.getBounds().intersects(visibleRect)) {
+                    start.clipSnapshot(visibleRect);
+                    if (start.isTiled()) {
+                        start.getTiles().fillAll();
+                        capturedSnapshotCount++;
+                    } else {
+                        snapshotStates.add(start);
+                    }
+                }
             }
         }
+        SnapshotAtlas.capture(snapshotStates, container, snapshotPool, atlases);
+        capturedSnapshotCount += snapshotStates.size();
     }
 
     /**
      * Save the end state for all components in this container. Any components in the container that are in the same
      * state at start and end will be removed from the list of components that need to be animated and will, instead, be
-     * rendered to the bg image.
+     * rendered to the bg image. Only the bounds of the end states are recorded here; their snapshots are taken in
+     * init(), once it is known which of them the effects need. Components that only exist in the end screen are added
+     * after all others, again from the bottom of the z-order to the top.
      */
     void setupEnd() {
-        for (Component childComponent : container.getComponents()) {
+        Rectangle visibleRect = container.getVisibleRect();
+        Component[] children = container.getComponents();
+        for (int i = children.length - 1; i >= 0; i--) {
+            Component childComponent = children[i];
             if (childComponent.isVisible() && (childComponent instanceof JComponent)) {
                 JComponent child = (JComponent) childComponent;
-                ComponentState end = new ComponentState(child);
+                ComponentState end = statePool.componentState(child);
+                end.clipSnapshot(visibleRect);
+                recordedStateCount++;
                 AnimationState animState = getExistingAnimationState(child);
                 if (animState != null) {
                     ComponentState start = animState.getStart();
                     if (start != null && start.equals(end)) {
-                        componentAnimationStates.remove(childComponent);
+                        componentAnimationStates.removeComponent(child);
+                        statePool.recycle(animState);
+                        statePool.recycle(end);
                     } else {
-                        changingComponents.add(child);
                         animState.setEnd(end);
                     }
                 } else {
-                    changingComponents.add(child);
-                    animState = new AnimationState(effectsManager, end, false);
-                    componentAnimationStates.put(child, animState);
+                    animState = statePool.animationState(end, false);
+                    componentAnimationStates.add(animState);
                 }
             }
         }
     }
 
+    /**
+     * Returns the number of component states of the current or last transition for which no snapshot was taken,
+     * because the component was outside the visible area, did not change or was rendered live by its effect.
+     */
+    int getSkippedSnapshotCount() {
+        return recordedStateCount - capturedSnapshotCount;
+    }
+
+    /**
+     * Returns the number of times during the current or last transition that an AnimationState was not painted because
+     * it was completely covered by an opaque AnimationState above it.
+     */
+    int getOccludedDrawCount() {
+        return occludedDrawCount;
+    }
+
+    /**
+     * Returns the timing target that advances the properties of all effects of the current transition; it is added to
+     * the animator by init().
+     */
+    ChannelBatch getChannelBatch() {
+        return channelBatch;
+    }
+
     /**
      * Add a start state for the given component
      *
@@ -224,14 +422,20 @@ class AnimationManager {
      *            The individual component to be animated
      */
     void addStart(JComponent component) {
-        AnimationState existingAnimState = getExistingAnimationState(component);
+        addStart(new ComponentState(component));
+    }
+
+    /**
+     * Add the given start state for its component
+     */
+    private void addStart(ComponentState start) {
+        AnimationState existingAnimState = getExistingAnimationState(start.getComponent());
         if (existingAnimState != null) {
             // Already have an end state, add this start state to existing
             // structure
-            existingAnimState.setStart(new ComponentState(component));
+            existingAnimState.setStart(start);
         } else {
-            AnimationState animState = new AnimationState(effectsManager, component, true);
-            componentAnimationStates.put(component, animState);
+            componentAnimationStates.add(statePool.animationState(start, true));
         }
     }
 
@@ -248,8 +452,7 @@ class AnimationManager {
             // structure
             existingAnimState.setEnd(new ComponentState(component));
         } else {
-            AnimationState animState = new AnimationState(effectsManager, component, false);
-            componentAnimationStates.put(component, animState);
+            componentAnimationStates.add(new AnimationState(component, false));
         }
     }
 
@@ -257,13 +460,160 @@ class AnimationManager {
      * This method is called during the transition animation. Iterate through the various <code>AnimationState</code>
      * objects asking each one to paint itself into the <code>Graphics</code>.
      *
+     * Nothing is allocated here in steady state: the states are rendered one after the other into <code>g</code>,
+     * which is restored to its original state after each of them. States that are completely covered by an opaque
+     * state above them in the current frame are skipped.
+     *
      * @param g
-     *            The <code>Graphics</code> object that the animating objects need to render themselves into.
+     *            The <code>Graphics2D</code> object that the animating objects need to render themselves into, which
+     *            maps container coordinates to the transition image (see {@link #getImageBounds()}). Callers should
+     *            pass the same object for all frames of a transition.
+     * @param dirtyRegion
+     *            Set to the area of the container, in container coordinates, that changed since the previous frame.
+     */
+    void paint(Graphics2D g, Rectangle dirtyRegion) {
+        baseState.save(g);
+        if (incrementalPainting && !fullFrameNeeded) {
+            paintIncremental(g, dirtyRegion);
+            return;
+        }
+        fullFrameNeeded = false;
+        g.drawImage(transitionImageBG, imageBounds.x, imageBounds.y, null);
+        dirtyRegion.setBounds(0, 0, 0, 0);
+        for (int i = 0; i < activeStateCount; i++) {
+            AnimationState state = activeStates[i];
+            state.measure(g, baseState);
+            stateIndex.update(i, state.getFootprint());
+        }
+        for (int i = 0; i < activeStateCount; i++) {
+            AnimationState state = activeStates[i];
+            if (stateIndex.isCovered(i)) {
+                occludedDrawCount++;
+            } else {
+                state.paintMeasured(g, baseState);
+            }
+            state.addDirtyRegion(dirtyRegion);
+        }
+    }
+
+    /**
+     * Returns whether all AnimationStates of the current transition can be rendered from snapshot images, so that their
+     * frames can be composed away from the EDT.
+     */
+    boolean canComposeOffscreen() {
+        for (int i = 0; i < activeStateCount; i++) {
+            if (!activeStates[i].canRenderFromSnapshot()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Captures the drawing operations of the current frame into <code>frame</code>, to be composed later by
+     * {@link FramePipeline}. This is called on the EDT instead of {@link #paint(Graphics2D, Rectangle)}.
      */
-    void paint(Graphics g) {
+    void capture(Graphics2D g, FramePipeline.Frame frame) {
+        baseState.save(g);
+        for (int i = 0; i < activeStateCount; i++) {
+            activeStates[i].capture(g, baseState, frame);
+        }
+    }
+
+    /**
+     * Copies the background of the transition into <code>g</code>, in the coordinates of the transition image. This is
+     * safe to call from any thread while a transition is running, as the background image is only modified in init().
+     */
+    void paintBackground(Graphics g) {
         g.drawImage(transitionImageBG, 0, 0, null);
-        for (AnimationState state : componentAnimationStates.values()) {
-            state.paint(g);
+    }
+
+    /**
+     * Composes a frame incrementally. Each AnimationState is measured first, which tells us the area it covers in this
+     * frame. The background is then restored under the previous and current footprint of every AnimationState, and
+     * only the AnimationStates that overlap a restored area, and that are not covered by an opaque AnimationState above
+     * them, are rendered again; those are found through the spatial index.
+     */
+    private void paintIncremental(Graphics2D g, Rectangle dirtyRegion) {
+        dirtyRegion.setBounds(0, 0, 0, 0);
+        damagedAreaCount = 0;
+        for (int i = 0; i < activeStateCount; i++) {
+            AnimationState state = activeStates[i];
+            state.measure(g, baseState);
+            stateIndex.update(i, state.getFootprint());
+            Rectangle damage = nextDamagedArea();
+            state.addDirtyRegion(damage);
+            Rectangle2D.intersect(damage, bgBounds(), damage);
+            if (damage.isEmpty()) {
+                damagedAreaCount--;
+            } else {
+                addToRegion(dirtyRegion, damage);
+            }
+        }
+
+        for (int i = 0; i < damagedAreaCount; i++) {
+            Rectangle r = damagedAreas[i];
+            int x2 = r.x + r.width;
+            int y2 = r.y + r.height;
+            g.drawImage(transitionImageBG,
+                        r.x,
+                        r.y,
+                        x2,
+                        y2,
+                        r.x - imageBounds.x,
+                        r.y - imageBounds.y,
+                        x2 - imageBounds.x,
+                        y2 - imageBounds.y,
+                        null);
+        }
+
+        stateIndex.clearMarks();
+        for (int i = 0; i < damagedAreaCount; i++) {
+            stateIndex.markFootprints(damagedAreas[i]);
+        }
+        for (int i = 0; i < activeStateCount; i++) {
+            if (stateIndex.isMarked(i)) {
+                if (stateIndex.isCovered(i)) {
+                    occludedDrawCount++;
+                } else {
+                    activeStates[i].paintMeasured(g, baseState);
+                }
+            }
+        }
+    }
+
+    private Rectangle bgBounds() {
+        bgBounds.setBounds(imageBounds.x, imageBounds.y, transitionImageBG.getWidth(), transitionImageBG.getHeight());
+        return bgBounds;
+    }
+
+    /**
+     * Returns the next unused damaged area of the current frame, growing the array as needed.
+     */
+    private Rectangle nextDamagedArea() {
+        if (damagedAreaCount == damagedAreas.length) {
+            damagedAreas = Arrays.copyOf(damagedAreas, Math.max(16, damagedAreas.length * 2));
+            for (int i = damagedAreaCount; i < damagedAreas.length; i++) {
+                damagedAreas[i] = new Rectangle();
+            }
+        }
+        Rectangle r = damagedAreas[damagedAreaCount++];
+        r.setBounds(0, 0, 0, 0);
+        return r;
+    }
+
+    /**
+     * Utility method that grows <code>region</code> to also contain <code>r</code>. Unlike
+     * {@link Rectangle#add(Rectangle)}, empty rectangles are ignored instead of being added as a point.
+     */
+    static void addToRegion(Rectangle region, Rectangle r) {
+        if (r.isEmpty()) {
+            return;
+        }
+        if (region.isEmpty()) {
+            region.setBounds(r);
+        } else {
+            region.add(r);
         }
     }
 }
\ No newline at end of file
@@ -33,30 +33,24 @@
 
 package org.jdesktop.animation.transitions;
 
-import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.util.List;
 
 import javax.swing.JComponent;
 
-import org.jdesktop.animation.transitions.effects.CompositeEffect;
-import org.jdesktop.animation.transitions.effects.FadeIn;
-import org.jdesktop.animation.transitions.effects.FadeOut;
-import org.jdesktop.animation.transitions.effects.Move;
-import org.jdesktop.animation.transitions.effects.Scale;
-import org.jdesktop.animation.transitions.effects.Unchanging;
 import org.jdesktop.core.animation.timing.Animator;
 
 /**
  * This class holds the start and/or end states for a <code>JComponent</code>. It also determines (at
  * <code>init()</code> time) the <code>Effect</code> to use during the transition and calls the appropriate Effect
- * during the {@link #paint(Graphics g)} method to cause the appropriate rendering of the component during the
- * transition.
+ * during the {@link #paintMeasured(Graphics2D, GraphicsState)} method to cause the appropriate rendering of the
+ * component during the transition.
  *
  * @author Chet Haase
  */
 class AnimationState {
 
-    private final EffectsManager effectsManager;
     /**
      * The component for this AnimationState. There is one component per state, with either a start, an end, or both
      * states.
@@ -74,11 +68,21 @@ class AnimationState {
      */
     private Effect effect;
 
+    /**
+     * Whether the effect was taken from the StatePool rather than from the EffectsManager: a default effect, or the
+     * adapter of a stateless effect.
+     */
+    private boolean pooledEffect;
+
+    /**
+     * The position of this AnimationState in the array of its {@link StateStore}.
+     */
+    int storeSlot;
+
     /**
      * Creates the AnimationState with the given start/end ComponentState
      */
-    AnimationState(EffectsManager effectsManager, ComponentState state, boolean isStart) {
-        this.effectsManager = effectsManager;
+    AnimationState(ComponentState state, boolean isStart) {
         component = state.getComponent();
         if (isStart) {
             start = state;
@@ -90,8 +94,7 @@ class AnimationState {
     /**
      * Constructs a new AnimationState with either the start or end state for the component.
      */
-    AnimationState(EffectsManager effectsManager, JComponent component, boolean isStart) {
-        this.effectsManager = effectsManager;
+    AnimationState(JComponent component, boolean isStart) {
         this.component = component;
         ComponentState compState = new ComponentState(component);
         if (isStart) {
@@ -101,6 +104,18 @@ class AnimationState {
         }
     }
 
+    /**
+     * Reinitializes this AnimationState with the given start or end state, as if it had just been created. A null
+     * state releases the references held by this AnimationState.
+     */
+    void reset(ComponentState state, boolean isStart) {
+        component = state == null ? null : state.getComponent();
+        start = isStart ? state : null;
+        end = isStart ? null : state;
+        effect = null;
+        pooledEffect = false;
+    }
+
     void setStart(ComponentState compState) {
         start = compState;
     }
@@ -109,6 +124,13 @@ class AnimationState {
         end = compState;
     }
 
+    /**
+     * Returns the effect of the running transition, or null before init().
+     */
+    Effect getEffect() {
+        return effect;
+    }
+
     ComponentState getStart() {
         return start;
     }
@@ -130,34 +152,56 @@ class AnimationState {
     }
 
     /**
-     * Called just prior to running the transition. This method examines the start and end states as well as the Effect
-     * repository to determine the appropriate Effect to use during the transition for this AnimationState. If there is
-     * an existing custom effect defined for the component for this type of transition, that effect will be used,
-     * Otherwise, the system will use the appropriate default effect (fading in, fading out, or moving/resizing).
+     * Sets <code>r</code> to the union of the start and end bounds of the component.
+     */
+    void getBounds(Rectangle r) {
+        r.setBounds(0, 0, 0, 0);
+        if (start != null) {
+            r.setBounds(start.getX(), start.getY(), start.getWidth(), start.getHeight());
+        }
+        if (end != null) {
+            if (start == null) {
+                r.setBounds(end.getX(), end.getY(), end.getWidth(), end.getHeight());
+            } else {
+                r.add(end.getX(), end.getY());
+                r.add(end.getX() + end.getWidth(), end.getY() + end.getHeight());
+            }
+        }
+    }
+
+    /**
+     * Called just prior to running the transition. This method examines the start and end states as well as the custom
+     * effects, through the resolver of the transition, to determine the appropriate Effect to use during the transition
+     * for this AnimationState. If there is an existing custom effect defined for the component for this type of
+     * transition, that effect will be used, Otherwise, the system will use the appropriate default effect (fading in,
+     * fading out, or moving/resizing).
      */
-    void init(Animator animator) {
+    void init(Animator animator, EffectResolver effectResolver, StatePool pool) {
+        pooledEffect = false;
         if (start == null) {
             // component is appearing during transition; search for existing
             // custom effects for this transition type
-            effect = effectsManager.getEffect(component, EffectsManager.TransitionType.APPEARING);
+            effect = effectResolver.getEffect(component, EffectsManager.TransitionType.APPEARING);
             if (effect == null) {
-                effect = new FadeIn(end);
+                effect = pool.fadeIn(end);
+                pooledEffect = true;
             } else {
                 effect.setEnd(end);
             }
         } else if (end == null) {
             // component is disappearing during transition; search for existing
             // custom effects for this transition type
-            effect = effectsManager.getEffect(component, EffectsManager.TransitionType.DISAPPEARING);
+            effect = effectResolver.getEffect(component, EffectsManager.TransitionType.DISAPPEARING);
             if (effect == null) {
-                effect = new FadeOut(start);
+                effect = pool.fadeOut(start);
+                pooledEffect = true;
             } else {
                 effect.setStart(start);
             }
         } else {
             // component is in both screens; search for existing
             // custom effects for this transition type
-            effect = effectsManager.getEffect(component, EffectsManager.TransitionType.CHANGING);
+            effect = effectResolver.getEffect(component, EffectsManager.TransitionType.CHANGING);
             if (effect == null) {
                 // No custom effect exists; use move/scale combinations
                 // as appropriate
@@ -174,52 +218,146 @@ class AnimationState {
                 if (move) {
                     if (scale) {
                         // move/scale composite effect needed
-                        effect = new Move(start, end);
-                        Effect scaleEffect = new Scale(start, end);
-                        effect = new CompositeEffect(effect);
-                        ((CompositeEffect) effect).addEffect(scaleEffect);
+                        effect = pool.moveAndScale(start, end);
                     } else {
                         // just move
-                        effect = new Move(start, end);
+                        effect = pool.move(start, end);
                     }
                 } else {
                     if (scale) {
                         // just scale
-                        effect = new Scale(start, end);
+                        effect = pool.scale(start, end);
                     } else {
                         // Noop
-                        effect = new Unchanging(start, end);
+                        effect = pool.unchanging(start, end);
                     }
                 }
+                pooledEffect = true;
             } else {
                 // Custom effect; set it up for this transition
                 effect.setStart(start);
                 effect.setEnd(end);
             }
         }
+        if (!pooledEffect) {
+            pooledEffect = pool.isPooled(effect);
+        }
         // initialize the effect that we are about to run in the transition
         effect.init(animator, null);
     }
 
+    /**
+     * Returns the effect of this AnimationState if it was taken from the StatePool and can be recycled, or null.
+     */
+    Effect getPooledEffect() {
+        return pooledEffect ? effect : null;
+    }
+
+    /**
+     * Adds the component state whose snapshot the effect of this AnimationState needs to <code>states</code>, if that
+     * snapshot has not been taken yet.
+     */
+    void addMissingSnapshot(List<ComponentState> states) {
+        if (effect != null) {
+            effect.addMissingSnapshot(states);
+        }
+    }
+
     /**
      * Clean up any artifacts created during the transition. This could include, for example, PropertySetter objects (or
      * other TimingTargets) added to the animator during the init() phase.
      */
     void cleanup(Animator animator) {
         effect.cleanup(animator);
+        // Custom effects outlive the transition in the EffectsManager; don't
+        // let them keep the components and snapshots of this one alive
+        effect.setStart(null);
+        effect.setEnd(null);
+        effect.releaseComponentImage();
+        effect.releasePreparedState();
+    }
+
+    /**
+     * Sets up the current frame without painting anything. This calculates the footprint of the effect for the current
+     * frame, so that the caller can decide whether this AnimationState has to be painted at all; if so, the frame is
+     * painted by {@link #paintMeasured(Graphics2D, GraphicsState)}.
+     */
+    void measure(Graphics2D g2d, GraphicsState baseState) {
+        if (effect != null) {
+            effect.beginFrame();
+            effect.prepare(g2d);
+            baseState.restore(g2d);
+        }
+    }
+
+    /**
+     * Render this AnimationState into the given Graphics object, by asking the Effect to paint the frame that
+     * {@link #measure(Graphics2D, GraphicsState)} has set up already; the effect is not set up a second time. The
+     * Graphics object must be in <code>baseState</code> on entry and is restored to it afterwards, to avoid leaking
+     * state between one AnimationState and the next during the transition.
+     */
+    void paintMeasured(Graphics2D g2d, GraphicsState baseState) {
+        if (effect != null) {
+            effect.paintPrepared(g2d);
+            baseState.restore(g2d);
+        }
+    }
+
+    /**
+     * Returns whether this AnimationState can be rendered from snapshot images alone.
+     *
+     * @see Effect#canRenderFromSnapshot()
+     */
+    boolean canRenderFromSnapshot() {
+        return effect == null || effect.canRenderFromSnapshot();
+    }
+
+    /**
+     * Sets up the current frame like {@link #measure(Graphics2D, GraphicsState)}, but records the resulting drawing
+     * operation in <code>frame</code> instead of painting it.
+     */
+    void capture(Graphics2D g2d, GraphicsState baseState, FramePipeline.Frame frame) {
+        if (effect != null) {
+            effect.beginFrame();
+            effect.prepare(g2d);
+            effect.capture(g2d, frame);
+            baseState.restore(g2d);
+            addDirtyRegion(frame.getDirtyRegion());
+        }
+    }
+
+    /**
+     * Returns the area covered by this AnimationState in the current frame, or <code>null</code> if it has no effect.
+     */
+    Rectangle getFootprint() {
+        return effect == null ? null : effect.getFootprint();
+    }
+
+    /**
+     * Returns the area covered with opaque pixels by this AnimationState in the current frame, or <code>null</code> if
+     * it has no effect.
+     *
+     * @see Effect#getOpaqueArea()
+     */
+    Rectangle getOpaqueArea() {
+        return effect == null ? null : effect.getOpaqueArea();
+    }
+
+    /**
+     * Returns whether the area covered by this AnimationState in the current frame intersects the given rectangle.
+     */
+    boolean intersects(Rectangle r) {
+        return effect != null && effect.getFootprint().intersects(r);
     }
 
     /**
-     * Render this AnimationState into the given Graphics object, by asking the Effect to render itself.
+     * Adds the area covered by this AnimationState in the previous and in the current frame to the given region. This
+     * is the area that needs to be copied to the screen after the current frame has been rendered.
      */
-    void paint(Graphics g) {
+    void addDirtyRegion(Rectangle dirtyRegion) {
         if (effect != null) {
-            // Create/use temporary Graphics object to avoid leaking
-            // state between one AnimationState and the next during
-            // the transition
-            Graphics2D g2d = (Graphics2D) g.create();
-            effect.render(g2d);
-            g2d.dispose();
+            AnimationManager.addToRegion(dirtyRegion, effect.getPreviousFootprint());
+            AnimationManager.addToRegion(dirtyRegion, effect.getFootprint());
         }
     }
 
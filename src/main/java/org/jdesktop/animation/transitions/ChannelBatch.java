@@ -0,0 +1,136 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.util.Arrays;
+
+import org.jdesktop.animation.transitions.Effect.PropertyChannel;
+import org.jdesktop.core.animation.timing.Animator;
+import org.jdesktop.core.animation.timing.TimingTargetAdapter;
+
+/**
+ * This class is the single timing target that advances the animated properties of all effects in a transition.
+ * <p>
+ * Instead of adding one <code>TimingTarget</code> per property and effect to the <code>Animator</code>, the effects
+ * register their {@link PropertyChannel}s here while the transition is initialized. The values of all channels are
+ * copied into flat primitive arrays, so that each timing event first interpolates every animated property (location,
+ * size, opacity, rotation, ...) in one loop over those arrays and then hands the results to the effects.
+ */
+class ChannelBatch extends TimingTargetAdapter {
+
+    private PropertyChannel[] channels = new PropertyChannel[16];
+    private int channelCount;
+
+    // Per channel: where its values start in keyValues, how many values it
+    // has, how many components each value has and where its current value
+    // is stored in currentValues
+    private int[] keyOffsets = new int[16];
+    private int[] valueCounts = new int[16];
+    private int[] dimensions = new int[16];
+    private int[] currentOffsets = new int[16];
+
+    private double[] keyValues = new double[64];
+    private int keyValueCount;
+
+    private double[] currentValues = new double[32];
+    private int currentValueCount;
+
+    // The elapsed fraction of the most recent timing event
+    private double fraction;
+
+    /**
+     * Adds a channel to the batch.
+     */
+    void add(PropertyChannel channel) {
+        if (channelCount == channels.length) {
+            int capacity = channelCount * 2;
+            channels = Arrays.copyOf(channels, capacity);
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            valueCounts = Arrays.copyOf(valueCounts, capacity);
+            dimensions = Arrays.copyOf(dimensions, capacity);
+            currentOffsets = Arrays.copyOf(currentOffsets, capacity);
+        }
+        int keyCount = channel.values.length;
+        if (keyValueCount + keyCount > keyValues.length) {
+            keyValues = Arrays.copyOf(keyValues, Math.max(keyValues.length * 2, keyValueCount + keyCount));
+        }
+        if (currentValueCount + channel.dimensions > currentValues.length) {
+            currentValues = Arrays.copyOf(currentValues, currentValues.length * 2 + channel.dimensions);
+        }
+        System.arraycopy(channel.values, 0, keyValues, keyValueCount, keyCount);
+        channels[channelCount] = channel;
+        keyOffsets[channelCount] = keyValueCount;
+        valueCounts[channelCount] = channel.valueCount;
+        dimensions[channelCount] = channel.dimensions;
+        currentOffsets[channelCount] = currentValueCount;
+        channelCount++;
+        keyValueCount += keyCount;
+        currentValueCount += channel.dimensions;
+    }
+
+    /**
+     * Removes all channels from the batch, keeping the arrays for the next transition.
+     */
+    void clear() {
+        Arrays.fill(channels, 0, channelCount, null);
+        channelCount = 0;
+        keyValueCount = 0;
+        currentValueCount = 0;
+        fraction = 0;
+    }
+
+    /**
+     * Returns the elapsed fraction of the transition, as of the most recent timing event.
+     */
+    double getFraction() {
+        return fraction;
+    }
+
+    @Override
+    public void timingEvent(Animator source, double fraction) {
+        this.fraction = fraction;
+        for (int i = 0; i < channelCount; i++) {
+            PropertyChannel.interpolate(keyValues,
+                                        keyOffsets[i],
+                                        valueCounts[i],
+                                        dimensions[i],
+                                        fraction,
+                                        currentValues,
+                                        currentOffsets[i]);
+        }
+        for (int i = 0; i < channelCount; i++) {
+            channels[i].apply(currentValues, currentOffsets[i]);
+        }
+    }
+}
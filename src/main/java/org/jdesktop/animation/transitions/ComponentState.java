@@ -39,13 +39,19 @@ import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
 import java.awt.Image;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Transparency;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 
 import javax.swing.JComponent;
 
 /**
  * This class stores the state of a component that will be used during the transition. The state includes the position,
  * the size, and an image snapshot of the component.
+ * <p/>
+ * The states created by a transition are reused by later transitions of the same <code>ScreenTransition</code>, so
+ * effects should not hold on to them after <code>cleanup()</code>.
  *
  * @author Chet Haase
  */
@@ -68,6 +74,43 @@ public class ComponentState {
      */
     private Image componentSnapshot;
 
+    /**
+     * Snapshots with more pixels than this are split into tiles that are rendered as they are drawn.
+     */
+    static final int TILING_THRESHOLD = 1024 * 1024;
+
+    /**
+     * The part of the component, in component coordinates, that the snapshot covers. This is the whole component
+     * unless the state was clipped to the visible area of the transition container.
+     */
+    private final Rectangle snapshotArea = new Rectangle();
+
+    /**
+     * The tiles of the snapshot, for states whose snapshot area is larger than {@link #TILING_THRESHOLD}.
+     */
+    private SnapshotTiles snapshotTiles;
+
+    /**
+     * Whether smaller copies of the snapshot are kept for effects that draw it at a small size.
+     */
+    private boolean mipmapped;
+
+    /**
+     * The smaller copies of the snapshot, if mipmapped is set and the snapshot has been drawn at less than half its
+     * size.
+     */
+    private SnapshotMipmap snapshotMipmap;
+
+    /**
+     * The pool that snapshots taken on demand are acquired from, or null if they are allocated directly.
+     */
+    private SurfacePool surfacePool;
+
+    /**
+     * Whether componentSnapshot was acquired from surfacePool by this state and must be released to it.
+     */
+    private boolean snapshotPooled;
+
     /**
      * The constructor takes a component and derives the state information needed (location, size, and image snapshot)
      *
@@ -75,27 +118,175 @@ public class ComponentState {
      *            the JComponent associated with this ComponentState
      */
     public ComponentState(JComponent component) {
+        this(component, true);
+    }
+
+    /**
+     * Creates the state of the given component, optionally without taking the image snapshot. A state created without
+     * a snapshot records only the location and size. Its snapshot is either set later through
+     * {@link #setSnapshot(Image)} or taken on demand by {@link #getSnapshot()}; either must happen while the component
+     * is still laid out as it was when this state was created.
+     *
+     * @param component
+     *            the JComponent associated with this ComponentState
+     * @param createSnapshot
+     *            whether the image snapshot should be taken now
+     */
+    ComponentState(JComponent component, boolean createSnapshot) {
         this.component = component;
         location = component.getLocation();
         width = component.getWidth();
         height = component.getHeight();
-        componentSnapshot = createSnapshot(component);
+        snapshotArea.setBounds(0, 0, width, height);
+        if (createSnapshot) {
+            componentSnapshot = createSnapshot(component);
+        }
     }
 
     /**
-     * Create an image snapshot of the component in its current state. This may be used in an Effect to render the
-     * transitioning component with an image.
+     * Reinitializes this state for the given component, as if it had just been created without a snapshot. A null
+     * component releases the references held by this state.
      */
-    private Image createSnapshot(JComponent component) {
+    void reset(JComponent component) {
+        this.component = component;
+        releaseSnapshot();
+        if (component == null) {
+            location.setLocation(0, 0);
+            width = height = 0;
+        } else {
+            component.getLocation(location);
+            width = component.getWidth();
+            height = component.getHeight();
+        }
+        snapshotArea.setBounds(0, 0, width, height);
+    }
+
+    /**
+     * Limits the snapshot of this state to the part of the component inside <code>visibleRect</code>, in the
+     * coordinates of the transition container. Only the visible part of a component is shown during a transition, so a
+     * large component in a scrolling container does not need a snapshot of its full size. This must be called before
+     * the snapshot is taken.
+     */
+    void clipSnapshot(Rectangle visibleRect) {
+        snapshotArea.setBounds(location.x, location.y, width, height);
+        Rectangle2D.intersect(snapshotArea, visibleRect, snapshotArea);
+        if (snapshotArea.isEmpty()) {
+            snapshotArea.setBounds(0, 0, 0, 0);
+        } else {
+            snapshotArea.translate(-location.x, -location.y);
+        }
+    }
+
+    /**
+     * Returns the part of the component, in component coordinates, that the image returned by {@link #getSnapshot()}
+     * covers. The image has the size of this area; it is the whole component unless the part of the component outside
+     * the visible area of the transition container was left out.
+     *
+     * @return a new rectangle holding the snapshot area
+     */
+    public Rectangle getSnapshotArea() {
+        return new Rectangle(snapshotArea);
+    }
+
+    /**
+     * Stores the snapshot area in the given rectangle, for callers that must not create a new one on every frame.
+     */
+    void getSnapshotArea(Rectangle area) {
+        area.setBounds(snapshotArea);
+    }
+
+    /**
+     * Returns whether the snapshot covers the whole component.
+     */
+    boolean isSnapshotComplete() {
+        return snapshotArea.x == 0 && snapshotArea.y == 0 && snapshotArea.width == width
+                && snapshotArea.height == height;
+    }
+
+    /**
+     * Returns whether the snapshot of this state is large enough to be split into tiles.
+     */
+    boolean isTiled() {
+        return (long) snapshotArea.width * snapshotArea.height > TILING_THRESHOLD;
+    }
+
+    /**
+     * Returns the tiles of the snapshot of this state, creating them if needed; no tile is rendered by this method.
+     */
+    SnapshotTiles getTiles() {
+        if (snapshotTiles == null) {
+            snapshotTiles = new SnapshotTiles(component, snapshotArea, surfacePool);
+        }
+        return snapshotTiles;
+    }
+
+    /**
+     * Sets the pool that the snapshots taken by this state on demand are acquired from. The snapshot is released to the
+     * pool when this state is reset.
+     */
+    void setSurfacePool(SurfacePool surfacePool) {
+        this.surfacePool = surfacePool;
+    }
+
+    /**
+     * Drops the snapshot of this state, returning it to the pool if it came from there.
+     */
+    private void releaseSnapshot() {
+        if (snapshotMipmap != null) {
+            snapshotMipmap.release();
+            snapshotMipmap = null;
+        }
+        if (snapshotTiles != null) {
+            snapshotTiles.release();
+            snapshotTiles = null;
+        }
+        if (snapshotPooled) {
+            surfacePool.release((BufferedImage) componentSnapshot);
+            snapshotPooled = false;
+        }
+        componentSnapshot = null;
+    }
+
+    /**
+     * Returns the graphics configuration of the given component, or the default configuration of the screen if the
+     * component does not have one yet. In a headless environment, where there is no screen, the configuration of an
+     * offscreen image is returned instead.
+     */
+    static GraphicsConfiguration getGraphicsConfiguration(JComponent component) {
         GraphicsConfiguration gc = component.getGraphicsConfiguration();
         if (gc == null) { // component may have null gc, get default
-            gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+            GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
+            if (ge.isHeadlessInstance()) {
+                Graphics2D g = ge.createGraphics(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB));
+                gc = g.getDeviceConfiguration();
+                g.dispose();
+            } else {
+                gc = ge.getDefaultScreenDevice().getDefaultConfiguration();
+            }
         }
-        if (width != 0 && height != 0) {
-            Image snapshot = gc.createCompatibleImage(width, height, component.isOpaque()
-                    ? Transparency.OPAQUE
-                    : Transparency.TRANSLUCENT);
+        return gc;
+    }
+
+    /**
+     * Create an image snapshot of the snapshot area of the component in its current state. This may be used in an
+     * Effect to render the transitioning component with an image.
+     */
+    private Image createSnapshot(JComponent component) {
+        GraphicsConfiguration gc = getGraphicsConfiguration(component);
+        int w = snapshotArea.width;
+        int h = snapshotArea.height;
+        if (w > 0 && h > 0) {
+            int transparency = component.isOpaque() ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+            Image snapshot;
+            if (surfacePool != null) {
+                snapshot = surfacePool.acquire(gc, w, h, transparency);
+                snapshotPooled = true;
+            } else {
+                snapshot = gc.createCompatibleImage(w, h, transparency);
+            }
             Graphics2D gImg = (Graphics2D) snapshot.getGraphics();
+            gImg.clipRect(0, 0, w, h);
+            gImg.translate(-snapshotArea.x, -snapshotArea.y);
             paintSingleBuffered(component, gImg);
             gImg.dispose();
             return snapshot;
@@ -129,15 +320,68 @@ public class ComponentState {
 
     /**
      * Gets the image representation of the component for this state. The image will be created if it does not exist
-     * already.
+     * already. It shows the snapshot area of the component (see {@link #getSnapshotArea()}).
      */
     public Image getSnapshot() {
         if (componentSnapshot == null) {
-            componentSnapshot = createSnapshot(component);
+            if (snapshotTiles != null) {
+                componentSnapshot = snapshotTiles.toImage();
+                snapshotPooled = surfacePool != null;
+            } else {
+                componentSnapshot = createSnapshot(component);
+            }
         }
         return componentSnapshot;
     }
 
+    /**
+     * Gets the image representation of the component for drawing it at the given size, which may be a smaller copy of
+     * the snapshot if this state is mipmapped (see {@link SnapshotMipmap}); otherwise this is the snapshot itself.
+     */
+    Image getSnapshot(int targetWidth, int targetHeight) {
+        Image snapshot = getSnapshot();
+        if (!mipmapped || snapshot == null) {
+            return snapshot;
+        }
+        if (snapshotMipmap == null) {
+            if (targetWidth * 2 > snapshotArea.width || targetHeight * 2 > snapshotArea.height) {
+                // Not small enough for the first level yet
+                return snapshot;
+            }
+            snapshotMipmap = new SnapshotMipmap(snapshot,
+                                                snapshotArea.width,
+                                                snapshotArea.height,
+                                                getGraphicsConfiguration(component),
+                                                component.isOpaque() ? Transparency.OPAQUE : Transparency.TRANSLUCENT,
+                                                surfacePool);
+        }
+        return snapshotMipmap.getLevel(targetWidth, targetHeight);
+    }
+
+    /**
+     * Sets whether smaller copies of the snapshot are created for drawing it at less than half its size. The default
+     * is <code>false</code>.
+     */
+    void setMipmapped(boolean mipmapped) {
+        this.mipmapped = mipmapped;
+    }
+
+    /**
+     * Returns whether the image representation of the component has been taken already, as a single image or as tiles.
+     */
+    boolean hasSnapshot() {
+        return componentSnapshot != null || snapshotTiles != null;
+    }
+
+    /**
+     * Sets the image representation of the component for this state. This is used when the snapshots of many
+     * components are captured together.
+     */
+    void setSnapshot(Image snapshot) {
+        releaseSnapshot();
+        componentSnapshot = snapshot;
+    }
+
     /**
      * The remaining methods exist solely to support the static paintSingleBuffered() method.
      */
@@ -180,8 +424,9 @@ public class ComponentState {
             y += prevTopmost.getY();
             prevTopmost = topmost;
         }
-        // Only want to paint the area of the original component
-        g.setClip(0, 0, w, h);
+        // Only want to paint the area of the original component, within the
+        // clip of the caller
+        g.clipRect(0, 0, w, h);
         g.translate(-x, -y);
         topmost.print(g);
         paintSingleBuffered(topmost, g);
@@ -33,15 +33,21 @@
 
 package org.jdesktop.animation.transitions;
 
+import java.awt.AlphaComposite;
+import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.util.List;
 
 import javax.swing.JComponent;
 
 import org.jdesktop.core.animation.timing.Animator;
+import org.jdesktop.core.animation.timing.TimingTargetAdapter;
 
 /**
  * This is the base class for all effects that are used during screen transitions.
@@ -51,7 +57,35 @@ import org.jdesktop.core.animation.timing.Animator;
  *
  * @author Chet Haase
  */
-public abstract class Effect {
+public abstract class Effect implements Cloneable {
+
+    /**
+     * How an effect that re-renders its component (see {@link #setRenderComponent(boolean)}) draws it when the
+     * component has both a start and an end state. The constants are ordered from the most to the least live
+     * rendering.
+     */
+    public enum MorphMode {
+        /**
+         * The component is laid out and painted at its current size in every frame.
+         */
+        LIVE,
+        /**
+         * The component is painted live until painting it takes more than {@value Effect#MORPH_THRESHOLD_MILLIS}
+         * milliseconds in two frames in a row; the rest of the transition is then drawn as with {@link #MORPH}.
+         */
+        AUTOMATIC,
+        /**
+         * The component is never painted during the transition. Instead, the snapshots of its start and end states
+         * are scaled to the current size and cross-faded as the size changes from the start to the end size.
+         */
+        MORPH
+    }
+
+    /**
+     * The time, in milliseconds, that painting a component live in a frame may take before an effect in the
+     * {@link MorphMode#AUTOMATIC} mode switches to morphing its snapshots.
+     */
+    public static final int MORPH_THRESHOLD_MILLIS = 4;
 
     /** Information about the start state used by this effect. */
     private ComponentState start;
@@ -59,11 +93,29 @@ public abstract class Effect {
     private ComponentState end;
     /** Flag to indicate whether effect needs to re-render Component */
     private boolean renderComponent = false;
+    /**
+     * Whether this is a sub-effect of an effect that re-renders the component, so that this effect is never drawn and
+     * needs no image; set by the parent after init().
+     */
+    private boolean parentRendersComponent;
     /**
      * The image that will be used during the transition, for effects that opt to not re-render the components directly.
      * The image will be set when the start and end states are set.
      */
     private Image componentImage;
+    /**
+     * The tiles drawn instead of componentImage, for effects that render a very large component from its snapshot.
+     */
+    private SnapshotTiles componentTiles;
+    /**
+     * The state that componentImage or componentTiles were taken from, or null for an image set by a subclass, which
+     * covers the whole component.
+     */
+    private ComponentState imageState;
+    /** The snapshot area of imageState, in the coordinates of the component. */
+    private Rectangle imageArea = new Rectangle();
+    /** Where componentImage is drawn in the current frame; reused on every frame. */
+    private Rectangle imageDestination = new Rectangle();
     /** Current x location. */
     private int x;
     /** Current y location. */
@@ -79,6 +131,120 @@ public abstract class Effect {
     private Rectangle bounds = new Rectangle();
     private Point location = new Point();
 
+    // The area of the transition container covered by this effect in the
+    // current and in the previous frame. These are updated during render()
+    // and are used to repaint only the parts of the animation layer that
+    // actually change between frames.
+    private Rectangle footprint = new Rectangle();
+    private Rectangle previousFootprint = new Rectangle();
+
+    /**
+     * The area of the transition container that this effect covers with fully opaque pixels in the current frame, or an
+     * empty rectangle if that is not known. Effects that are completely inside the opaque area of an effect above them
+     * do not need to be painted.
+     */
+    private Rectangle opaqueArea = new Rectangle();
+
+    /** Whether this effect can ever paint opaquely; set by init(). */
+    private boolean mayOcclude;
+
+    /** The morph mode of the current transition; set by init(). */
+    private MorphMode morphMode = MorphMode.LIVE;
+    /** Whether the component is currently drawn by cross-fading its snapshots instead of being painted. */
+    private boolean morphing;
+    /** The number of consecutive frames in which painting the component took longer than the morph threshold. */
+    private int slowFrameCount;
+    // Scratch rectangles for drawing a snapshot while morphing
+    private Rectangle morphArea = new Rectangle();
+    private Rectangle morphDestination = new Rectangle();
+
+    /**
+     * The transform that the effect currently being prepared has applied to the Graphics2D, relative to the transition
+     * container. It is maintained by prepare() and by the {@link #translate(Graphics2D, double, double) translate()},
+     * {@link #rotate(Graphics2D, double, double, double) rotate()} and {@link #scale(Graphics2D, double, double)
+     * scale()} helpers, because reading the transform back from the Graphics2D creates a new object on every call.
+     * Effects are only prepared on the EDT, one at a time, so a single instance is shared by all effects.
+     */
+    private static final AffineTransform frameTransform = new AffineTransform();
+
+    /** Whether {@link #frameTransform} reflects everything that setup() does to the transform of the Graphics2D. */
+    private boolean transformTracked;
+
+    // The transform and composite that setup() left in the Graphics2D in
+    // the last prepare() call, the transform relative to the one on entry,
+    // so that paintPrepared() can paint the frame without calling setup()
+    // again. Effects whose transform is not tracked may change any other
+    // attribute in setup() as well, so their complete state is saved.
+    private AffineTransform preparedTransform = new AffineTransform();
+    private Composite preparedComposite;
+    private GraphicsState preparedState;
+
+    // The transform of the Graphics2D when the effect currently being
+    // prepared was entered, and the transform applied since then; used for
+    // effects whose transform is not tracked
+    private static final AffineTransform entryTransform = new AffineTransform();
+    private static final AffineTransform relativeTransform = new AffineTransform();
+
+    // AlphaComposite objects for all opacity levels that can be told apart
+    // in an 8-bit alpha channel, created once instead of on every frame.
+    private static final AlphaComposite[] composites = new AlphaComposite[256];
+
+    static {
+        for (int i = 0; i < composites.length; i++) {
+            composites[i] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, i / 255f);
+        }
+    }
+
+    /**
+     * The batch that collects the property channels of all effects while a transition is initialized, and the animator
+     * it belongs to. Set by AnimationManager around the init() calls on the EDT.
+     */
+    private static ChannelBatch initBatch;
+    private static Animator initBatchAnimator;
+
+    // What init(), createComponentImage() and canRenderFromSnapshot() need
+    // to know about the class of an effect, found through reflection once
+    // per class rather than on every transition.
+    private static final ClassValue<Boolean> OVERRIDES_PAINT = new ClassValue<Boolean>() {
+
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return getDeclaringClass(type, "paint") != Effect.class;
+        }
+    };
+    private static final ClassValue<Boolean> SETUP_IN_LIBRARY = new ClassValue<Boolean>() {
+
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return getDeclaringClass(type, "setup").getName().startsWith(Effect.class.getPackage().getName() + ".");
+        }
+    };
+
+    /**
+     * Creates an effect with no start and end states.
+     */
+    public Effect() {
+    }
+
+    /**
+     * Creates an effect with the configuration of <code>prototype</code>, but none of the state of a transition: it
+     * has no start and end states and no image. This is for subclasses that build the copy returned by
+     * {@link #createCopy()} with a copy constructor, for instance because they hold final fields that a clone would
+     * share with the prototype.
+     *
+     * @param prototype
+     *            the effect whose configuration is copied
+     */
+    protected Effect(Effect prototype) {
+        renderComponent = prototype.renderComponent;
+        x = prototype.x;
+        y = prototype.y;
+        width = prototype.width;
+        height = prototype.height;
+        bounds.setBounds(prototype.bounds);
+        location.setLocation(prototype.location);
+    }
+
     /**
      * Set the location and size of the component state being animated by this effect
      */
@@ -100,8 +266,15 @@ public abstract class Effect {
      * Set the location of the component state being animated by this effect
      */
     public void setLocation(Point location) {
-        this.location.x = this.bounds.x = this.x = location.x;
-        this.location.y = this.bounds.y = this.y = location.y;
+        setLocation(location.x, location.y);
+    }
+
+    /**
+     * Set the location of the component state being animated by this effect
+     */
+    public void setLocation(int x, int y) {
+        this.location.x = this.bounds.x = this.x = x;
+        this.location.y = this.bounds.y = this.y = y;
     }
 
     /**
@@ -154,20 +327,65 @@ public abstract class Effect {
      * , as many effects will depend on the state that is set up in this method.
      */
     public void init(Animator animator, Effect parentEffect) {
-        bounds = new Rectangle();
+        bounds.setBounds(0, 0, 0, 0);
+        footprint.setBounds(0, 0, 0, 0);
+        previousFootprint.setBounds(0, 0, 0, 0);
+        opaqueArea.setBounds(0, 0, 0, 0);
+        parentRendersComponent = false;
+        transformTracked = tracksTransform();
+        mayOcclude = transformTracked && getComponent().isOpaque() && !overridesPaint();
+        morphMode = (renderComponent && start != null && end != null && !overridesPaint()) ? getMorphMode()
+                : MorphMode.LIVE;
+        morphing = morphMode == MorphMode.MORPH;
+        slowFrameCount = 0;
         if (start != null) {
             setBounds(start.getX(), start.getY(), start.getWidth(), start.getHeight());
         } else {
             setBounds(end.getX(), end.getY(), end.getWidth(), end.getHeight());
         }
-        // If this effect already has a snapshot image of the
-        // component, but it's not the size that we need, flush it now
-        // and it will be created later during the first setup() call
-        if (componentImage != null
-            && ((start != null && (start.getWidth() != componentImage.getWidth(null))) || ((end != null && (end.getWidth() != componentImage.getWidth(null)))))) {
-            componentImage.flush();
-            componentImage = null;
+        // A snapshot image left from a previous transition shows the
+        // component as it was then; the image for this transition is taken
+        // from the component states during the first setup() call
+        componentImage = null;
+        componentTiles = null;
+        imageState = null;
+    }
+
+    /**
+     * Creates a copy of this effect that can be used for another component, for example by the factory returned from
+     * {@link EffectsManager#prototypeFactory(Effect)}. The copy has the configuration of this effect, but none of the
+     * state of a transition: it has no start and end states and no image.
+     * <p>
+     * The default implementation makes a shallow copy with {@link Object#clone()}. Subclasses that hold mutable
+     * configuration objects should override this method and copy those objects as well.
+     *
+     * @return a new, independent copy of this effect
+     */
+    public Effect createCopy() {
+        Effect copy;
+        try {
+            copy = (Effect) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e.toString());
         }
+        copy.start = null;
+        copy.end = null;
+        copy.componentImage = null;
+        copy.componentTiles = null;
+        copy.imageState = null;
+        copy.imageArea = new Rectangle();
+        copy.imageDestination = new Rectangle();
+        copy.morphArea = new Rectangle();
+        copy.preparedTransform = new AffineTransform();
+        copy.preparedComposite = null;
+        copy.preparedState = null;
+        copy.morphDestination = new Rectangle();
+        copy.bounds = new Rectangle(bounds);
+        copy.location = new Point(location);
+        copy.footprint = new Rectangle();
+        copy.previousFootprint = new Rectangle();
+        copy.opaqueArea = new Rectangle();
+        return copy;
     }
 
     /**
@@ -179,6 +397,53 @@ public abstract class Effect {
     public void cleanup(Animator animator) {
     }
 
+    /**
+     * Registers a property channel that animates a property of this effect during the transition. When called from
+     * <code>init()</code> during the setup of a screen transition, the channel joins the single timing target that
+     * advances the properties of all effects of that transition. Otherwise it is added to <code>animator</code>
+     * directly.
+     *
+     * @param animator
+     *            the animator passed to <code>init()</code>
+     * @param channel
+     *            the channel to register
+     */
+    protected void addChannel(Animator animator, PropertyChannel channel) {
+        if (initBatch != null && animator == initBatchAnimator) {
+            channel.batched = true;
+            initBatch.add(channel);
+        } else {
+            channel.batched = false;
+            animator.addTarget(channel);
+        }
+    }
+
+    /**
+     * Unregisters a property channel registered with {@link #addChannel(Animator, PropertyChannel) addChannel()}. This
+     * should be called from <code>cleanup()</code>.
+     */
+    protected void removeChannel(Animator animator, PropertyChannel channel) {
+        if (channel != null && !channel.batched) {
+            animator.removeTarget(channel);
+        }
+    }
+
+    /**
+     * Returns the batch of the transition that is being initialized, or null outside of its initialization.
+     */
+    static ChannelBatch getChannelBatch() {
+        return initBatch;
+    }
+
+    /**
+     * Called by AnimationManager before and after initializing the effects of a transition, so that their channels are
+     * collected in <code>batch</code> rather than being added to the animator one by one.
+     */
+    static void setChannelBatch(ChannelBatch batch, Animator animator) {
+        initBatch = batch;
+        initBatchAnimator = animator;
+    }
+
     /**
      * Tells the Effect to re-render the component during the transition instead of using an image representation of the
      * component. This is necessary for some animations which may change how a component looks internally during the
@@ -205,6 +470,19 @@ public abstract class Effect {
         return renderComponent;
     }
 
+    /**
+     * Returns how this effect draws its component if it re-renders the component and the component has both a start
+     * and an end state; see {@link MorphMode}. Effects that override {@link #paint(Graphics2D)} always use
+     * {@link MorphMode#LIVE}.
+     * <p>
+     * The default implementation returns {@link MorphMode#LIVE}.
+     *
+     * @return the morph mode of this effect, never null
+     */
+    public MorphMode getMorphMode() {
+        return MorphMode.LIVE;
+    }
+
     /**
      * Sets both the start and end states of this Effect.
      */
@@ -254,16 +532,75 @@ public abstract class Effect {
      */
     protected void setComponentImage(Image componentImage) {
         this.componentImage = componentImage;
+        componentTiles = null;
+        imageState = null;
     }
 
     /**
-     * Creates and renders an image representation of the component.
+     * Creates and renders an image representation of the component. The snapshot of a very large component is drawn
+     * from its tiles by {@link #paint(Graphics2D)}, so that only the tiles in the clip are rendered; effects with their
+     * own <code>paint()</code> get it as a single image.
      */
     private void createComponentImage() {
-        if (start != null && end == null) {
-            componentImage = start.getSnapshot();
+        ComponentState state = getSnapshotState();
+        imageState = state;
+        imageArea.setBounds(state.getSnapshotArea());
+        if (state.isTiled() && !overridesPaint()) {
+            componentTiles = state.getTiles();
+        } else {
+            componentImage = state.getSnapshot();
+        }
+    }
+
+    /**
+     * Returns the image to draw into <code>imageDestination</code>: componentImage, or a reduced copy of it if the
+     * state it was taken from keeps reduced copies and the destination is small enough for one.
+     */
+    private Image getDrawnImage() {
+        if (imageState == null) {
+            return componentImage;
+        }
+        return imageState.getSnapshot(imageDestination.width, imageDestination.height);
+    }
+
+    /**
+     * Sets <code>imageDestination</code> to the rectangle that componentImage is drawn into in the current frame: the
+     * snapshot area scaled from the size of its state to the current size of the effect.
+     */
+    private void updateImageDestination() {
+        if (imageState == null || imageState.isSnapshotComplete()) {
+            imageDestination.setBounds(0, 0, width, height);
+        } else {
+            scaleSnapshotArea(imageState, imageArea, imageDestination);
+        }
+    }
+
+    /**
+     * Sets <code>destination</code> to the snapshot area of the given state, scaled from the size of the state to the
+     * current size of the effect.
+     */
+    private void scaleSnapshotArea(ComponentState state, Rectangle area, Rectangle destination) {
+        double scaleX = (double) width / state.getWidth();
+        double scaleY = (double) height / state.getHeight();
+        int x1 = (int) Math.round(area.x * scaleX);
+        int y1 = (int) Math.round(area.y * scaleY);
+        int x2 = (int) Math.round((area.x + area.width) * scaleX);
+        int y2 = (int) Math.round((area.y + area.height) * scaleY);
+        destination.setBounds(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Returns the state whose snapshot best represents the component during this effect.
+     */
+    private ComponentState getSnapshotState() {
+        if (start != null && end != null && !start.hasSnapshot()) {
+            // The start state was off-screen when the transition began, so its
+            // snapshot was skipped; the image can only come from the end screen
+            return end;
+        } else if (start != null && end == null) {
+            return start;
         } else if (start == null && end != null) {
-            componentImage = end.getSnapshot();
+            return end;
         } else if (start.getWidth() != end.getWidth() || start.getHeight() != end.getHeight()) {
             // This block grabs the targetImage
             // that best represents the component; the larger the better.
@@ -273,22 +610,57 @@ public abstract class Effect {
                 // difference greater in width
                 if (widthFraction < 1.0f) {
                     // start size larger then end size
-                    componentImage = start.getSnapshot();
+                    return start;
                 } else {
-                    componentImage = end.getSnapshot();
+                    return end;
                 }
             } else {
                 // different greater in height
                 if (heightFraction < 1.0f) {
                     // start size larger than end size
-                    componentImage = start.getSnapshot();
+                    return start;
                 } else {
-                    componentImage = end.getSnapshot();
+                    return end;
                 }
             }
         } else {
-            componentImage = start.getSnapshot();
+            return start;
+        }
+    }
+
+    /**
+     * Adds the component state whose snapshot this effect is going to use to <code>states</code>, if that snapshot has
+     * not been taken yet. Effects that re-render their component need no snapshot. This is called right after
+     * <code>init()</code>, while the end screen of the transition is still laid out, so that all needed snapshots can
+     * be captured at once.
+     */
+    void addMissingSnapshot(List<ComponentState> states) {
+        if (morphing) {
+            // The start screen is gone, so only the end state can be captured
+            if (!end.hasSnapshot()) {
+                states.add(end);
+            }
+            return;
+        }
+        if (renderComponent || componentImage != null || componentTiles != null) {
+            return;
         }
+        ComponentState state = getSnapshotState();
+        if (state != null && !state.hasSnapshot()) {
+            states.add(state);
+        }
+    }
+
+    /**
+     * Drops the reference to the snapshot image cached by this effect, if any. It will be taken from the component
+     * state again when it is needed. The image itself is left alone: it belongs to the component state, and may be a
+     * view of an atlas or a pooled image that other states still draw from, so only its owner may flush it. This must
+     * be called on the EDT.
+     */
+    void releaseComponentImage() {
+        componentImage = null;
+        componentTiles = null;
+        imageState = null;
     }
 
     /**
@@ -306,7 +678,7 @@ public abstract class Effect {
      *            the Graphics2D destination for this rendering
      */
     public void setup(Graphics2D g2d) {
-        if (!renderComponent && componentImage == null) {
+        if (!renderComponent && !parentRendersComponent && componentImage == null && componentTiles == null) {
             createComponentImage();
         }
     }
@@ -327,14 +699,186 @@ public abstract class Effect {
      *            instead of the graphics state.
      */
     public void paint(Graphics2D g2d) {
-        if (!renderComponent && (componentImage != null)) {
+        if (morphing) {
+            paintMorph(g2d);
+        } else if (!renderComponent && (componentTiles != null)) {
             g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-            g2d.drawImage(componentImage, 0, 0, width, height, null);
+            componentTiles.paint(g2d,
+                                 (double) width / imageState.getWidth(),
+                                 (double) height / imageState.getHeight());
+        } else if (!renderComponent && (componentImage != null)) {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            updateImageDestination();
+            g2d.drawImage(getDrawnImage(),
+                          imageDestination.x,
+                          imageDestination.y,
+                          imageDestination.width,
+                          imageDestination.height,
+                          null);
+        } else if (morphMode == MorphMode.AUTOMATIC) {
+            long startTime = System.nanoTime();
+            paintLive(g2d);
+            if (System.nanoTime() - startTime > MORPH_THRESHOLD_MILLIS * 1000000L) {
+                if (++slowFrameCount >= 2) {
+                    startMorphing();
+                }
+            } else {
+                slowFrameCount = 0;
+            }
+        } else {
+            paintLive(g2d);
+        }
+    }
+
+    /**
+     * Lays out and paints the component at the current bounds of the effect.
+     */
+    private void paintLive(Graphics2D g2d) {
+        getComponent().setBounds(bounds);
+        getComponent().validate();
+        ComponentState.paintSingleBuffered(getComponent(), g2d);
+    }
+
+    /**
+     * Switches from painting the component live to morphing its snapshots, for the rest of the transition. The
+     * component is laid out at its end bounds again, so that the snapshot of the end state can still be taken.
+     */
+    private void startMorphing() {
+        getComponent().setBounds(end.getX(), end.getY(), end.getWidth(), end.getHeight());
+        getComponent().validate();
+        morphing = true;
+    }
+
+    /**
+     * Draws the snapshot of the end state over the snapshot of the start state, both scaled to the current size, with
+     * the end state fading in as the size approaches the end size. The start snapshot stays fully opaque for opaque
+     * components, so that the background does not show through in the middle of the transition. If the start state
+     * has no snapshot, because the component was not visible when the transition began, only the end state is drawn.
+     */
+    private void paintMorph(Graphics2D g2d) {
+        Composite composite = g2d.getComposite();
+        float alpha = 1f;
+        if (composite instanceof AlphaComposite && ((AlphaComposite) composite).getRule() == AlphaComposite.SRC_OVER) {
+            alpha = ((AlphaComposite) composite).getAlpha();
+        }
+        float fraction = start.hasSnapshot() ? getMorphFraction() : 1f;
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        if (fraction < 1f) {
+            g2d.setComposite(getAlphaComposite(getComponent().isOpaque() ? alpha : alpha * (1f - fraction)));
+            drawSnapshot(g2d, start);
+        }
+        if (fraction > 0f) {
+            g2d.setComposite(getAlphaComposite(alpha * fraction));
+            drawSnapshot(g2d, end);
+        }
+        g2d.setComposite(composite);
+    }
+
+    /**
+     * Returns how far the size of the effect has come from the start size to the end size, between 0 and 1, along the
+     * dimension that changes the most.
+     */
+    private float getMorphFraction() {
+        int deltaWidth = end.getWidth() - start.getWidth();
+        int deltaHeight = end.getHeight() - start.getHeight();
+        float fraction;
+        if (deltaWidth == 0 && deltaHeight == 0) {
+            fraction = 1f;
+        } else if (Math.abs(deltaWidth) >= Math.abs(deltaHeight)) {
+            fraction = (float) (width - start.getWidth()) / deltaWidth;
         } else {
-            getComponent().setBounds(bounds);
-            getComponent().validate();
-            ComponentState.paintSingleBuffered(getComponent(), g2d);
+            fraction = (float) (height - start.getHeight()) / deltaHeight;
+        }
+        return Math.max(0f, Math.min(1f, fraction));
+    }
+
+    /**
+     * Draws the snapshot of the given state scaled to the current size of the effect.
+     */
+    private void drawSnapshot(Graphics2D g2d, ComponentState state) {
+        state.getSnapshotArea(morphArea);
+        if (morphArea.isEmpty()) {
+            return;
         }
+        if (state.isTiled()) {
+            state.getTiles().paint(g2d, (double) width / state.getWidth(), (double) height / state.getHeight());
+            return;
+        }
+        scaleSnapshotArea(state, morphArea, morphDestination);
+        g2d.drawImage(state.getSnapshot(morphDestination.width, morphDestination.height),
+                      morphDestination.x,
+                      morphDestination.y,
+                      morphDestination.width,
+                      morphDestination.height,
+                      null);
+    }
+
+    /**
+     * Returns the shared source-over <code>AlphaComposite</code> for the given opacity, rounded to the nearest of the
+     * 256 levels of an 8-bit alpha channel. Effects should use this instead of creating a composite on every frame.
+     */
+    protected static AlphaComposite getAlphaComposite(float opacity) {
+        int level = Math.round(opacity * 255);
+        return composites[Math.max(0, Math.min(255, level))];
+    }
+
+    /**
+     * Translates the Graphics2D like {@link Graphics2D#translate(double, double)}. Effects that change the transform in
+     * <code>setup()</code> should do so through this method and its siblings, so that the area covered by the effect
+     * can be determined without reading the transform back from the Graphics2D.
+     */
+    protected void translate(Graphics2D g2d, double tx, double ty) {
+        g2d.translate(tx, ty);
+        frameTransform.translate(tx, ty);
+    }
+
+    /**
+     * Rotates the Graphics2D like {@link Graphics2D#rotate(double, double, double)}.
+     *
+     * @see #translate(Graphics2D, double, double)
+     */
+    protected void rotate(Graphics2D g2d, double theta, double x, double y) {
+        g2d.rotate(theta, x, y);
+        frameTransform.rotate(theta, x, y);
+    }
+
+    /**
+     * Scales the Graphics2D like {@link Graphics2D#scale(double, double)}.
+     *
+     * @see #translate(Graphics2D, double, double)
+     */
+    protected void scale(Graphics2D g2d, double sx, double sy) {
+        g2d.scale(sx, sy);
+        frameTransform.scale(sx, sy);
+    }
+
+    /**
+     * Returns whether this effect changes the transform of the Graphics2D in <code>setup()</code> only through the
+     * {@link #translate(Graphics2D, double, double) translate()}, {@link #rotate(Graphics2D, double, double, double)
+     * rotate()} and {@link #scale(Graphics2D, double, double) scale()} helpers of this class. This is assumed for the
+     * effects of this library and for subclasses that do not override setup(). Effects returning <code>false</code>
+     * still work, but cost a temporary transform object per frame.
+     */
+    protected boolean tracksTransform() {
+        return SETUP_IN_LIBRARY.get(getClass());
+    }
+
+    /**
+     * Returns whether the given effect tracks its transform, for effects that combine other effects.
+     *
+     * @see #tracksTransform()
+     */
+    protected static boolean tracksTransform(Effect effect) {
+        return effect.tracksTransform();
+    }
+
+    /**
+     * Tells a sub-effect, after it has been initialized, whether its parent effect re-renders the component. The
+     * sub-effect then only sets up the graphics state for its parent and takes no image of the component, which would
+     * never be drawn.
+     */
+    protected static void setParentRendersComponent(Effect effect, boolean parentRendersComponent) {
+        effect.parentRendersComponent = parentRendersComponent;
     }
 
     /**
@@ -342,15 +886,463 @@ public abstract class Effect {
      * paint().
      */
     void render(Graphics2D g2d) {
-        // First, translate to where we need to render
-        g2d.translate(location.x, location.y);
-
-        // Now call setup and paint. Splitting rendering into these
+        // Call setup and paint. Splitting rendering into these
         // two operations allows custom effects to have multiple
         // sub-effects combine their efforts into the Graphics2D
         // object prior to calling paint with that altered graphics
         // object.
+        prepare(g2d);
+        paint(g2d);
+    }
+
+    /**
+     * Starts a new frame of this effect: the current footprint becomes the previous one. This is called once per frame,
+     * before the effect is prepared.
+     */
+    void beginFrame() {
+        previousFootprint.setBounds(footprint);
+    }
+
+    /**
+     * Performs the first half of {@link #render(Graphics2D)}: translates to the current location, calls setup() and
+     * calculates the footprint of this effect for the current frame. The frame is completed by calling
+     * {@link #paint(Graphics2D)} with the same Graphics2D object. The transform of the Graphics2D on entry maps the
+     * coordinates of the transition container to the image being rendered, and the footprint is calculated relative
+     * to it. The graphics state that setup() produced is remembered, so that the frame can also be completed later by
+     * {@link #paintPrepared(Graphics2D)} without calling setup() again.
+     */
+    void prepare(Graphics2D g2d) {
+        if (!transformTracked) {
+            entryTransform.setTransform(g2d.getTransform());
+        }
+        // First, translate to where we need to render
+        frameTransform.setToIdentity();
+        translate(g2d, location.x, location.y);
         setup(g2d);
+        AffineTransform tx = transformTracked ? frameTransform : getRelativeTransform(g2d);
+        updateFootprint(tx);
+        updateOpaqueArea(g2d);
+        if (transformTracked) {
+            preparedTransform.setTransform(tx);
+            preparedComposite = g2d.getComposite();
+        } else {
+            if (preparedState == null) {
+                preparedState = new GraphicsState();
+            }
+            preparedState.update(g2d);
+        }
+    }
+
+    /**
+     * Forgets the graphics state remembered by the last call to {@link #prepare(Graphics2D)}, so that it does not keep
+     * the Graphics2D of a finished transition alive.
+     */
+    void releasePreparedState() {
+        preparedComposite = null;
+        if (preparedState != null) {
+            preparedState.clear();
+        }
+    }
+
+    /**
+     * Paints the frame that the last call to {@link #prepare(Graphics2D)} set up, into a Graphics2D that is in the
+     * state it had on entry to prepare(). The graphics state that setup() produced then is applied again, and
+     * {@link #paint(Graphics2D)} is called; setup() is not called again, so it still runs only once per frame.
+     */
+    void paintPrepared(Graphics2D g2d) {
+        if (transformTracked) {
+            g2d.transform(preparedTransform);
+            g2d.setComposite(preparedComposite);
+        } else {
+            preparedState.restore(g2d);
+        }
         paint(g2d);
     }
+
+    /**
+     * Returns the transform that setup() applied to the Graphics2D of an effect whose transform is not tracked,
+     * relative to the transform on entry to prepare().
+     */
+    private static AffineTransform getRelativeTransform(Graphics2D g2d) {
+        relativeTransform.setTransform(entryTransform);
+        try {
+            relativeTransform.invert();
+        } catch (NoninvertibleTransformException e) {
+            return g2d.getTransform();
+        }
+        relativeTransform.concatenate(g2d.getTransform());
+        return relativeTransform;
+    }
+
+    /**
+     * Returns whether every frame of this effect can be rendered from the snapshot image of its component alone. This
+     * is the case if the effect does not re-render its component and does not override {@link #paint(Graphics2D)}.
+     * Such effects can be captured on the EDT and composed on another thread, unless the snapshot is split into tiles,
+     * which may have to be rendered from the component as they are drawn.
+     */
+    boolean canRenderFromSnapshot() {
+        return !renderComponent && !overridesPaint() && componentTiles == null;
+    }
+
+    /**
+     * Returns whether the class of this effect overrides {@link #paint(Graphics2D)}.
+     */
+    private boolean overridesPaint() {
+        return OVERRIDES_PAINT.get(getClass());
+    }
+
+    /**
+     * Returns the class that declares the given method of <code>type</code>, which takes a Graphics2D.
+     */
+    private static Class<?> getDeclaringClass(Class<?> type, String methodName) {
+        try {
+            return type.getMethod(methodName, Graphics2D.class).getDeclaringClass();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Records the drawing operation that {@link #paint(Graphics2D)} would perform in the graphics state set up by
+     * {@link #prepare(Graphics2D)}, instead of performing it. Only valid if {@link #canRenderFromSnapshot()} is true.
+     */
+    void capture(Graphics2D g2d, FramePipeline.Frame frame) {
+        if (componentImage != null && width > 0 && height > 0) {
+            updateImageDestination();
+            frame.addDraw(getDrawnImage(),
+                          imageDestination.x,
+                          imageDestination.y,
+                          imageDestination.width,
+                          imageDestination.height,
+                          transformTracked ? frameTransform : getRelativeTransform(g2d),
+                          g2d.getComposite(),
+                          g2d);
+        }
+    }
+
+    /**
+     * Returns the area of the transition container that this effect covered in the most recently rendered frame.
+     */
+    Rectangle getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * Returns the area of the transition container that this effect covered in the frame before the most recently
+     * rendered one.
+     */
+    Rectangle getPreviousFootprint() {
+        return previousFootprint;
+    }
+
+    /**
+     * Returns the area of the transition container that this effect covers with fully opaque pixels in the most
+     * recently rendered frame. The rectangle is empty if the effect is translucent or transformed in that frame.
+     */
+    Rectangle getOpaqueArea() {
+        return opaqueArea;
+    }
+
+    /**
+     * Calculates the opaque area of the current frame. It is only known for opaque components painted by
+     * {@link #paint(Graphics2D)} of this class, with a plain translation and a fully opaque source-over composite; the
+     * footprint is then rounded inwards, as the pixels at fractional edges are not necessarily covered.
+     */
+    private void updateOpaqueArea(Graphics2D g2d) {
+        opaqueArea.setBounds(0, 0, 0, 0);
+        if (!mayOcclude || morphing || (!renderComponent && componentImage == null) || width <= 0 || height <= 0) {
+            return;
+        }
+        if (!renderComponent && imageState != null && !imageState.isSnapshotComplete()) {
+            // The image leaves out part of the component
+            return;
+        }
+        if ((frameTransform.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) {
+            return;
+        }
+        Composite composite = g2d.getComposite();
+        if (!(composite instanceof AlphaComposite)
+            || ((AlphaComposite) composite).getRule() != AlphaComposite.SRC_OVER
+            || ((AlphaComposite) composite).getAlpha() < 1f) {
+            return;
+        }
+        int ox = (int) Math.ceil(frameTransform.getTranslateX());
+        int oy = (int) Math.ceil(frameTransform.getTranslateY());
+        int ow = (int) Math.floor(frameTransform.getTranslateX() + width) - ox;
+        int oh = (int) Math.floor(frameTransform.getTranslateY() + height) - oy;
+        if (ow > 0 && oh > 0) {
+            opaqueArea.setBounds(ox, oy, ow, oh);
+        }
+    }
+
+    /**
+     * Calculates the footprint of the current frame. The footprint is the bounding box of the area
+     * <code>(0, 0, width, height)</code> that paint() renders into, transformed by whatever <code>setup()</code> did to
+     * the Graphics2D (a rotation, for example) and rounded outwards to whole pixels.
+     */
+    private void updateFootprint(AffineTransform tx) {
+        if (width <= 0 || height <= 0) {
+            footprint.setBounds(0, 0, 0, 0);
+            return;
+        }
+        double x0 = tx.getTranslateX();
+        double y0 = tx.getTranslateY();
+        double wx = tx.getScaleX() * width;
+        double wy = tx.getShearY() * width;
+        double hx = tx.getShearX() * height;
+        double hy = tx.getScaleY() * height;
+        double minX = x0 + Math.min(0, wx) + Math.min(0, hx);
+        double maxX = x0 + Math.max(0, wx) + Math.max(0, hx);
+        double minY = y0 + Math.min(0, wy) + Math.min(0, hy);
+        double maxY = y0 + Math.max(0, wy) + Math.max(0, hy);
+        int fx = (int) Math.floor(minX);
+        int fy = (int) Math.floor(minY);
+        footprint.setBounds(fx, fy, (int) Math.ceil(maxX) - fx, (int) Math.ceil(maxY) - fy);
+    }
+
+    /**
+     * Base class of the typed property channels that effects use to animate their properties during the transition.
+     * A channel is a <code>TimingTarget</code> that interpolates primitive values and hands them to a typed
+     * <code>set()</code> method, so that no reflection, boxing or temporary objects are involved on a timing event.
+     * <p>
+     * Each channel takes two or more values. As with <code>PropertySetter</code>, the values are spread evenly over the
+     * duration of the animation, and the channel interpolates linearly between neighbouring values. Effects register
+     * their channels with {@link Effect#addChannel(Animator, PropertyChannel) addChannel()}; during a transition all
+     * channels are then advanced together by a single target on the <code>Animator</code>. Typical usage in the
+     * <code>init()</code> method of an effect is:
+     *
+     * <pre>
+     * ps = new FloatChannel(0f, 1f) {
+     *     protected void set(float value) {
+     *         setOpacity(value);
+     *     }
+     * };
+     * addChannel(animator, ps);
+     * </pre>
+     *
+     * Effects that are run again and again can keep their channel and re-target it with <code>setValues()</code> in
+     * <code>init()</code>, before registering it, instead of creating a new one for every transition.
+     */
+    public abstract static class PropertyChannel extends TimingTargetAdapter {
+
+        /** The values of the channel, one group of <code>dimensions</code> numbers per value. */
+        final double[] values;
+        /** The number of components of each value, for example 2 for a point. */
+        final int dimensions;
+        /** The number of values, at least 2. */
+        final int valueCount;
+        /** Whether the channel is advanced by a ChannelBatch instead of being added to the Animator itself. */
+        boolean batched;
+
+        private final double[] current;
+
+        PropertyChannel(double[] values, int dimensions) {
+            if (values.length < 2 * dimensions) {
+                throw new IllegalArgumentException("At least two values are required");
+            }
+            this.values = values;
+            this.dimensions = dimensions;
+            this.valueCount = values.length / dimensions;
+            this.current = new double[dimensions];
+        }
+
+        @Override
+        public final void timingEvent(Animator source, double fraction) {
+            interpolate(values, 0, valueCount, dimensions, fraction, current, 0);
+            apply(current, 0);
+        }
+
+        /**
+         * Interpolates between <code>valueCount</code> values of <code>dimensions</code> components each, stored at
+         * <code>offset</code> in <code>values</code>, and stores the value at <code>fraction</code> in
+         * <code>out</code>.
+         */
+        static void interpolate(double[] values,
+                int offset,
+                int valueCount,
+                int dimensions,
+                double fraction,
+                double[] out,
+                int outOffset) {
+            int segments = valueCount - 1;
+            double position = Math.max(0.0, Math.min(1.0, fraction)) * segments;
+            int segment = Math.min((int) position, segments - 1);
+            double f = position - segment;
+            int i0 = offset + segment * dimensions;
+            for (int d = 0; d < dimensions; d++) {
+                double v0 = values[i0 + d];
+                out[outOffset + d] = v0 + (values[i0 + dimensions + d] - v0) * f;
+            }
+        }
+
+        /**
+         * Sets the property to the value stored at <code>offset</code> in <code>current</code>.
+         */
+        abstract void apply(double[] current, int offset);
+
+        /**
+         * Checks that the values of this channel can be replaced by a start and an end value.
+         */
+        void checkTwoValues() {
+            if (valueCount != 2) {
+                throw new IllegalStateException("Only a channel of two values can be re-targeted");
+            }
+        }
+    }
+
+    /**
+     * A property channel that animates an <code>int</code> value.
+     */
+    public abstract static class IntChannel extends PropertyChannel {
+
+        public IntChannel(int... values) {
+            super(toDoubles(values), 1);
+        }
+
+        private static double[] toDoubles(int[] values) {
+            double[] result = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                result[i] = values[i];
+            }
+            return result;
+        }
+
+        /**
+         * Replaces the start and end values of a channel of two values.
+         *
+         * @throws IllegalStateException
+         *             if the channel has more than two values
+         */
+        public void setValues(int from, int to) {
+            checkTwoValues();
+            values[0] = from;
+            values[1] = to;
+        }
+
+        @Override
+        void apply(double[] current, int offset) {
+            set((int) Math.round(current[offset]));
+        }
+
+        /**
+         * Called on every timing event with the current value of the channel.
+         */
+        protected abstract void set(int value);
+    }
+
+    /**
+     * A property channel that animates a <code>float</code> value.
+     */
+    public abstract static class FloatChannel extends PropertyChannel {
+
+        public FloatChannel(float... values) {
+            super(toDoubles(values), 1);
+        }
+
+        private static double[] toDoubles(float[] values) {
+            double[] result = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                result[i] = values[i];
+            }
+            return result;
+        }
+
+        /**
+         * Replaces the start and end values of a channel of two values.
+         *
+         * @throws IllegalStateException
+         *             if the channel has more than two values
+         */
+        public void setValues(float from, float to) {
+            checkTwoValues();
+            values[0] = from;
+            values[1] = to;
+        }
+
+        @Override
+        void apply(double[] current, int offset) {
+            set((float) current[offset]);
+        }
+
+        /**
+         * Called on every timing event with the current value of the channel.
+         */
+        protected abstract void set(float value);
+    }
+
+    /**
+     * A property channel that animates a <code>double</code> value.
+     */
+    public abstract static class DoubleChannel extends PropertyChannel {
+
+        public DoubleChannel(double... values) {
+            super(values.clone(), 1);
+        }
+
+        /**
+         * Replaces the start and end values of a channel of two values.
+         *
+         * @throws IllegalStateException
+         *             if the channel has more than two values
+         */
+        public void setValues(double from, double to) {
+            checkTwoValues();
+            values[0] = from;
+            values[1] = to;
+        }
+
+        @Override
+        void apply(double[] current, int offset) {
+            set(current[offset]);
+        }
+
+        /**
+         * Called on every timing event with the current value of the channel.
+         */
+        protected abstract void set(double value);
+    }
+
+    /**
+     * A property channel that animates a point, such as the location of an effect. The coordinates are interpolated
+     * separately and handed to <code>set()</code> as two <code>int</code> values.
+     */
+    public abstract static class PointChannel extends PropertyChannel {
+
+        public PointChannel(Point... values) {
+            super(toDoubles(values), 2);
+        }
+
+        private static double[] toDoubles(Point[] values) {
+            double[] result = new double[values.length * 2];
+            for (int i = 0; i < values.length; i++) {
+                result[2 * i] = values[i].x;
+                result[2 * i + 1] = values[i].y;
+            }
+            return result;
+        }
+
+        /**
+         * Replaces the start and end points of a channel of two points.
+         *
+         * @throws IllegalStateException
+         *             if the channel has more than two points
+         */
+        public void setValues(int fromX, int fromY, int toX, int toY) {
+            checkTwoValues();
+            values[0] = fromX;
+            values[1] = fromY;
+            values[2] = toX;
+            values[3] = toY;
+        }
+
+        @Override
+        void apply(double[] current, int offset) {
+            set((int) Math.round(current[offset]), (int) Math.round(current[offset + 1]));
+        }
+
+        /**
+         * Called on every timing event with the current value of the channel.
+         */
+        protected abstract void set(int x, int y);
+    }
 }
@@ -0,0 +1,177 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.Container;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.swing.JComponent;
+
+import org.jdesktop.animation.transitions.EffectsManager.EffectFactory;
+import org.jdesktop.animation.transitions.EffectsManager.Rules;
+import org.jdesktop.animation.transitions.EffectsManager.StatelessFactory;
+import org.jdesktop.animation.transitions.EffectsManager.TransitionType;
+
+/**
+ * This class resolves the custom effects of the components in one transition, following the order described in
+ * {@link EffectsManager}. A new resolver is created for every transition, so that the rules can change between
+ * transitions. The resolver takes the effects and rules of the manager as they are when it is created, so that changes
+ * made from other threads during the transition do not apply to part of its components only. Within a transition, the
+ * results of the class and container rules are cached, as the components of a
+ * screen usually share a few classes and parents. Resolving the effect of a component then takes a few map lookups,
+ * independent of the number of rules and of the depth of the component in the hierarchy.
+ */
+class EffectResolver {
+
+    /** Marks a cached result of "no rule applies", as the caches cannot hold null values usefully. */
+    private static final EffectFactory NO_FACTORY = new EffectFactory() {
+
+        @Override
+        public Effect createEffect(JComponent component) {
+            return null;
+        }
+    };
+
+    // The effects and rules of the manager when this transition started
+    private final Map<TransitionType, Rules> rules = new EnumMap<>(TransitionType.class);
+
+    // The container of the transition, which is the parent of all animated
+    // components
+    private final JComponent container;
+
+    // Supplies the adapters of stateless effects
+    private final StatePool statePool;
+
+    // The resolved class and container rules of this transition, per
+    // transition type and class or container
+    private final Map<TransitionType, Map<Class<?>, EffectFactory>> classCache = new EnumMap<>(TransitionType.class);
+    private final Map<TransitionType, Map<Container, EffectFactory>> containerCache = new EnumMap<>(
+            TransitionType.class);
+
+    EffectResolver(EffectsManager effectsManager, JComponent container, StatePool statePool) {
+        this.container = container;
+        this.statePool = statePool;
+        effectsManager.purgeCollectedComponents();
+        for (TransitionType transitionType : TransitionType.values()) {
+            rules.put(transitionType, effectsManager.getRules(transitionType));
+        }
+    }
+
+    /**
+     * Returns the custom effect for the given component and transition type, or null if the default effect should be
+     * used. Effects created by rules are used by this component only: new instances, or for stateless effects,
+     * adapters from the StatePool of the transition.
+     */
+    Effect getEffect(JComponent component, TransitionType transitionType) {
+        Rules rulesForType = rules.get(transitionType);
+        Effect effect = rulesForType.getEffect(component);
+        if (effect != null) {
+            return effect;
+        }
+        EffectFactory factory = rulesForType.getComponentFactory(component);
+        if (factory == null) {
+            factory = rulesForType.getClientPropertyRule(component);
+        }
+        if (factory == null && rulesForType.hasClassRules()) {
+            factory = getClassFactory(component.getClass(), transitionType);
+        }
+        if (factory == null && rulesForType.hasContainerRules()) {
+            // Disappearing components may have been removed from the
+            // transition container already
+            Container parent = component.getParent();
+            factory = getContainerFactory(parent == null ? container : parent, transitionType);
+        }
+        if (factory instanceof StatelessFactory) {
+            return statePool.stateless(((StatelessFactory) factory).getEffect());
+        }
+        return factory == null ? null : factory.createEffect(component);
+    }
+
+    /**
+     * Returns the factory of the rule for the given class or its nearest superclass with a rule.
+     */
+    private EffectFactory getClassFactory(Class<?> componentClass, TransitionType transitionType) {
+        Map<Class<?>, EffectFactory> cache = classCache.get(transitionType);
+        if (cache == null) {
+            cache = new HashMap<>();
+            classCache.put(transitionType, cache);
+        }
+        EffectFactory factory = cache.get(componentClass);
+        if (factory == null) {
+            factory = rules.get(transitionType).getClassRule(componentClass);
+            if (factory == null) {
+                Class<?> superclass = componentClass.getSuperclass();
+                if (superclass != null) {
+                    factory = getClassFactory(superclass, transitionType);
+                }
+                if (factory == null) {
+                    factory = NO_FACTORY;
+                }
+            }
+            cache.put(componentClass, factory);
+        }
+        return factory == NO_FACTORY ? null : factory;
+    }
+
+    /**
+     * Returns the factory of the rule of the given container or its nearest ancestor with a rule.
+     */
+    private EffectFactory getContainerFactory(Container container, TransitionType transitionType) {
+        if (container == null) {
+            return null;
+        }
+        Map<Container, EffectFactory> cache = containerCache.get(transitionType);
+        if (cache == null) {
+            cache = new IdentityHashMap<>();
+            containerCache.put(transitionType, cache);
+        }
+        EffectFactory factory = cache.get(container);
+        if (factory == null) {
+            if (container instanceof JComponent) {
+                factory = rules.get(transitionType).getContainerRule((JComponent) container);
+            }
+            if (factory == null) {
+                factory = getContainerFactory(container.getParent(), transitionType);
+                if (factory == null) {
+                    factory = NO_FACTORY;
+                }
+            }
+            cache.put(container, factory);
+        }
+        return factory == NO_FACTORY ? null : factory;
+    }
+}
@@ -33,8 +33,17 @@
 
 package org.jdesktop.animation.transitions;
 
+import java.awt.EventQueue;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.swing.JComponent;
 
@@ -42,6 +51,27 @@ import javax.swing.JComponent;
  * This class manages the cache of effects for the application. Users wishing to have specific effects occur on
  * particular components should cache those effects here. These effects will be retrieved at transition time, based on
  * which components are transitioning and which {@link TransitionType} is needed.
+ * <p/>
+ * Besides effects for individual components, effects can be defined by rules that apply to many components at once:
+ * for all components of a class, for all components with a given client property value, and for all components inside
+ * a container. As one rule may apply to many components in the same transition, rules take an {@link EffectFactory}
+ * that creates a separate effect for each component. When a component is part of a transition, its effect is resolved
+ * in this order:
+ * <ol>
+ * <li>the effect set for the component itself with {@link #setEffect(JComponent, Effect, TransitionType)}, or else
+ * its factory, see {@link #setEffectFactory(JComponent, EffectFactory, TransitionType)}</li>
+ * <li>the first matching client property rule, see
+ * {@link #setClientPropertyEffect(Object, Object, EffectFactory, TransitionType)}</li>
+ * <li>the rule for the class of the component or its nearest superclass, see
+ * {@link #setClassEffect(Class, EffectFactory, TransitionType)}</li>
+ * <li>the rule of the nearest ancestor container, see
+ * {@link #setContainerEffect(JComponent, EffectFactory, TransitionType)}</li>
+ * <li>the default effect of the transition</li>
+ * </ol>
+ * <p/>
+ * This class is thread-safe, so effects and rules can be set up from background threads, for instance while the next
+ * screen is being loaded. Changes are published atomically and do not block transitions in progress; a transition uses
+ * the effects and rules as they were when it started.
  *
  * @author Chet Haase
  */
@@ -65,19 +95,48 @@ public final class EffectsManager {
         DISAPPEARING
     }
 
-    private final Map<JComponent, Effect> cachedChangingEffects = new HashMap<>();
-    private final Map<JComponent, Effect> cachedAppearingEffects = new HashMap<>();
-    private final Map<JComponent, Effect> cachedDisappearingEffects = new HashMap<>();
+    /**
+     * Creates the effects for the components that an effect rule applies to.
+     */
+    public static interface EffectFactory {
+
+        /**
+         * Creates a new effect for the given component. The effect is used for a single transition of that component.
+         *
+         * @param component
+         *            the component that the effect will animate
+         * @return the effect, or null if the default effect should be used for this component
+         */
+        Effect createEffect(JComponent component);
+    }
+
+    /**
+     * The custom effects and effect rules, one set per transition type and indexed by its ordinal. Each set is
+     * immutable; writers replace it with a modified copy, under <code>writeLock</code>, so that the sets can be read
+     * from any thread without locking. The components are only weakly referenced, so that components which are no
+     * longer used by the application can be collected together with their effects.
+     */
+    private final AtomicReferenceArray<Rules> rules = new AtomicReferenceArray<>(TransitionType.values().length);
+
+    private final Object writeLock = new Object();
+
+    // Receives the keys of the components that have been collected
+    private final ReferenceQueue<JComponent> collectedKeys = new ReferenceQueue<>();
 
     public EffectsManager() {
+        for (TransitionType transitionType : TransitionType.values()) {
+            rules.set(transitionType.ordinal(), Rules.EMPTY);
+        }
     }
 
     /**
      * This method is used to cache a custom effect on a per-component basis for the application. Note that these custom
      * effects are application wide for the duration of the process, or until a new or null effect is set for this
-     * component. Note also that custom effects are registered according to the {@link TransitionType}. So a custom
-     * <code>TransitionType.CHANGING</code> effect for a given component will have no bearing on the effect used in a
-     * transition where the component either appears or disappers between the transition states.
+     * component. The component is not kept alive by this cache: once the application no longer references it, the
+     * effect is dropped and any snapshot image cached by the effect is released. Note also that custom effects are
+     * registered according to the {@link TransitionType}. So a custom <code>TransitionType.CHANGING</code> effect for a
+     * given component will have no bearing on the effect used in a transition where the component either appears or
+     * disappers between the transition states.
      * 
      * @param component
      *            The JComponent that this effect should be applied to
@@ -90,28 +149,154 @@ public final class EffectsManager {
      * @see TransitionType
      */
     public void setEffect(JComponent component, Effect effect, TransitionType transitionType) {
-        if (effect == null) {
-            removeEffect(component, transitionType);
-            return;
+        synchronized (writeLock) {
+            Rules current = beginWrite(transitionType);
+            publish(transitionType, new Rules(with(current.effects, key(component, effect), effect),
+                                              current.componentFactories,
+                                              current.classEffects,
+                                              current.clientPropertyEffects,
+                                              current.containerEffects));
         }
-        switch (transitionType) {
-            case CHANGING:
-                cachedChangingEffects.put(component, effect);
-                break;
-            case APPEARING:
-                cachedAppearingEffects.put(component, effect);
-                break;
-            case DISAPPEARING:
-                cachedDisappearingEffects.put(component, effect);
-                break;
-            default:
-                throw new InternalError("unknown TransitionType");
+    }
+
+    /**
+     * Sets the factory that creates the effect of the given component for every transition. Unlike an effect set with
+     * {@link #setEffect(JComponent, Effect, TransitionType)}, which is one mutable instance reused for every transition
+     * of the component, the factory provides a new effect each time; see also {@link #prototypeFactory(Effect)}.
+     *
+     * @param component
+     *            The JComponent that the effects should be applied to
+     * @param factory
+     *            the factory of the effects. A null argument removes the factory.
+     * @param transitionType
+     *            The type of transition to apply the effects on
+     */
+    public void setEffectFactory(JComponent component, EffectFactory factory, TransitionType transitionType) {
+        synchronized (writeLock) {
+            Rules current = beginWrite(transitionType);
+            publish(transitionType, new Rules(current.effects,
+                                              with(current.componentFactories, key(component, factory), factory),
+                                              current.classEffects,
+                                              current.clientPropertyEffects,
+                                              current.containerEffects));
+        }
+    }
+
+    /**
+     * Returns a factory that creates the effects as copies of the given prototype, see {@link Effect#createCopy()}. The
+     * prototype itself is never used in a transition, so it can be shared by any number of components and rules.
+     *
+     * @param prototype
+     *            the configured effect to copy
+     * @return the factory creating copies of <code>prototype</code>
+     */
+    public static EffectFactory prototypeFactory(final Effect prototype) {
+        return new EffectFactory() {
+
+            @Override
+            public Effect createEffect(JComponent component) {
+                return prototype.createCopy();
+            }
+        };
+    }
+
+    /**
+     * Returns a factory for the given stateless effect. All frames are computed by the one <code>effect</code>
+     * instance. A transition still runs it through an adapter per component, which tracks what the frame loop needs to
+     * know about the component; the adapters are recycled by the transition, so repeated transitions do not create
+     * them again.
+     *
+     * @param effect
+     *            the stateless effect
+     * @return the factory running <code>effect</code> for each component
+     */
+    public static EffectFactory statelessFactory(StatelessEffect effect) {
+        return new StatelessFactory(effect);
+    }
+
+    /**
+     * Sets the rule that creates the effects of all components of the given class and its subclasses, unless a rule for
+     * a more specific class exists.
+     *
+     * @param componentClass
+     *            the class of the components that the rule applies to
+     * @param factory
+     *            the factory of the effects. A null argument removes the rule.
+     * @param transitionType
+     *            The type of transition to apply the rule on
+     */
+    public void setClassEffect(Class<? extends JComponent> componentClass, EffectFactory factory,
+            TransitionType transitionType) {
+        synchronized (writeLock) {
+            Rules current = beginWrite(transitionType);
+            publish(transitionType, new Rules(current.effects,
+                                              current.componentFactories,
+                                              with(current.classEffects, componentClass, factory),
+                                              current.clientPropertyEffects,
+                                              current.containerEffects));
+        }
+    }
+
+    /**
+     * Sets the rule that creates the effects of all components whose client property <code>key</code> equals
+     * <code>value</code> (see {@link JComponent#getClientProperty(Object)}). If several client property rules match a
+     * component, the rule for the property key that was used first wins.
+     *
+     * @param key
+     *            the client property key
+     * @param value
+     *            the value of the client property that the rule applies to
+     * @param factory
+     *            the factory of the effects. A null argument removes the rule.
+     * @param transitionType
+     *            The type of transition to apply the rule on
+     */
+    public void setClientPropertyEffect(Object key, Object value, EffectFactory factory,
+            TransitionType transitionType) {
+        synchronized (writeLock) {
+            Rules current = beginWrite(transitionType);
+            Map<Object, EffectFactory> rulesForKey = current.clientPropertyEffects.get(key);
+            if (rulesForKey == null) {
+                rulesForKey = Collections.emptyMap();
+            }
+            rulesForKey = with(rulesForKey, value, factory);
+            publish(transitionType, new Rules(current.effects,
+                                              current.componentFactories,
+                                              current.classEffects,
+                                              with(current.clientPropertyEffects,
+                                                   key,
+                                                   rulesForKey.isEmpty() ? null : rulesForKey),
+                                              current.containerEffects));
+        }
+    }
+
+    /**
+     * Sets the rule that creates the effects of all components inside the given container, at any depth, unless a
+     * container closer to the component has a rule itself. The rule does not apply to the container itself. Like the
+     * effects set for individual components, the container is not kept alive by this rule.
+     *
+     * @param container
+     *            the container whose descendants the rule applies to
+     * @param factory
+     *            the factory of the effects. A null argument removes the rule.
+     * @param transitionType
+     *            The type of transition to apply the rule on
+     */
+    public void setContainerEffect(JComponent container, EffectFactory factory, TransitionType transitionType) {
+        synchronized (writeLock) {
+            Rules current = beginWrite(transitionType);
+            publish(transitionType, new Rules(current.effects,
+                                              current.componentFactories,
+                                              current.classEffects,
+                                              current.clientPropertyEffects,
+                                              with(current.containerEffects, key(container, factory), factory)));
         }
     }
 
     /**
      * This method is called during the setup phase for any transition. It queries the cache for a custom effect
-     * associated with a given component and <code>TransitionType</code>
+     * associated with a given component and <code>TransitionType</code>. Effect rules are not considered here. This
+     * method may be called from any thread and does not block.
      * 
      * @param component
      *            The component we are querying on behalf of
@@ -121,16 +306,7 @@ public final class EffectsManager {
      *         value indicates that there is no custom effect associated with this component and transition type
      */
     public Effect getEffect(JComponent component, TransitionType transitionType) {
-        switch (transitionType) {
-            case CHANGING:
-                return cachedChangingEffects.get(component);
-            case APPEARING:
-                return cachedAppearingEffects.get(component);
-            case DISAPPEARING:
-                return cachedDisappearingEffects.get(component);
-            default:
-                throw new InternalError("unknown TransitionType");
-        }
+        return rules.get(transitionType.ordinal()).getEffect(component);
     }
 
     /**
@@ -142,50 +318,297 @@ public final class EffectsManager {
      *            The type of transition associated with the component and effect
      */
     public void removeEffect(JComponent component, TransitionType transitionType) {
-        switch (transitionType) {
-            case CHANGING:
-                cachedChangingEffects.remove(component);
-                break;
-            case APPEARING:
-                cachedAppearingEffects.remove(component);
-                break;
-            case DISAPPEARING:
-                cachedDisappearingEffects.remove(component);
-                break;
-            default:
-                throw new InternalError("unknown TransitionType");
-        }
+        setEffect(component, null, transitionType);
     }
 
     /**
-     * This method clears all effects for the specified <code>transitionType</code>.
+     * This method clears all effects and effect rules for the specified <code>transitionType</code>.
      * 
      * @param transitionType
      *            The type of transition for which all custom effects should be cleared
      */
     public void clearEffects(TransitionType transitionType) {
-        switch (transitionType) {
-            case CHANGING:
-                cachedChangingEffects.clear();
-                break;
-            case APPEARING:
-                cachedAppearingEffects.clear();
-                break;
-            case DISAPPEARING:
-                cachedDisappearingEffects.clear();
-                break;
-            default:
-                throw new InternalError("unknown TransitionType");
+        synchronized (writeLock) {
+            beginWrite(transitionType);
+            publish(transitionType, Rules.EMPTY);
         }
     }
 
     /**
-     * This method clears the manager of all custom effects currently set.
+     * This method clears the manager of all custom effects and effect rules currently set.
      */
     public void clearAllEffects() {
-        cachedChangingEffects.clear();
-        cachedAppearingEffects.clear();
-        cachedDisappearingEffects.clear();
+        for (TransitionType transitionType : TransitionType.values()) {
+            clearEffects(transitionType);
+        }
+    }
+
+    /**
+     * Returns the current effects and rules for the given transition type. The result is immutable, so a transition
+     * can keep using it while the application changes the effects.
+     */
+    Rules getRules(TransitionType transitionType) {
+        return rules.get(transitionType.ordinal());
+    }
+
+    /**
+     * Drops the effects and rules of all components that have been collected, releasing the snapshot images cached by
+     * their effects. This only takes the write lock if a component has been collected since the last call.
+     */
+    void purgeCollectedComponents() {
+        if (collectedKeys.poll() != null) {
+            synchronized (writeLock) {
+                purgeCollectedKeys();
+            }
+        }
+    }
+
+    /**
+     * Returns the set of the given type that is about to be replaced, after dropping the collected components from
+     * all sets. Must be called with the write lock held.
+     */
+    private Rules beginWrite(TransitionType transitionType) {
+        if (collectedKeys.poll() != null) {
+            purgeCollectedKeys();
+        }
+        return rules.get(transitionType.ordinal());
+    }
+
+    private void publish(TransitionType transitionType, Rules newRules) {
+        rules.set(transitionType.ordinal(), newRules);
+    }
+
+    private void purgeCollectedKeys() {
+        while (collectedKeys.poll() != null) {
+            // the sets are scanned for all collected keys below
+        }
+        List<Effect> released = new ArrayList<>();
+        for (TransitionType transitionType : TransitionType.values()) {
+            Rules current = rules.get(transitionType.ordinal());
+            released.addAll(collectedEntries(current.effects).values());
+            publish(transitionType, new Rules(retainLive(current.effects),
+                                              retainLive(current.componentFactories),
+                                              current.classEffects,
+                                              current.clientPropertyEffects,
+                                              retainLive(current.containerEffects)));
+        }
+        releaseComponentImages(released);
+    }
+
+    /**
+     * Releases the images cached by the given effects on the EDT, which is the only thread that uses them. A purge
+     * may be triggered by a writer on any thread, and an effect registered for a collected component may still be in
+     * use for another component in a running transition.
+     */
+    private static void releaseComponentImages(final Collection<Effect> effects) {
+        if (effects.isEmpty()) {
+            return;
+        }
+        Runnable release = new Runnable() {
+
+            @Override
+            public void run() {
+                for (Effect effect : effects) {
+                    effect.releaseComponentImage();
+                }
+            }
+        };
+        if (EventQueue.isDispatchThread()) {
+            release.run();
+        } else {
+            EventQueue.invokeLater(release);
+        }
+    }
+
+    /**
+     * Returns the key for the given component; a lookup key if <code>value</code> is null, as the entry is then only
+     * removed.
+     */
+    private ComponentKey key(JComponent component, Object value) {
+        return new ComponentKey(component, value == null ? null : collectedKeys);
+    }
+
+    /**
+     * Returns a copy of <code>map</code> in which <code>key</code> maps to <code>value</code>, or does not map to
+     * anything if <code>value</code> is null. The order of the entries is kept.
+     */
+    private static <K, V> Map<K, V> with(Map<K, V> map, K key, V value) {
+        Map<K, V> copy = new LinkedHashMap<>(map);
+        if (value == null) {
+            copy.remove(key);
+        } else {
+            copy.put(key, value);
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the entries of <code>map</code> whose components have been collected.
+     */
+    private static <V> Map<ComponentKey, V> collectedEntries(Map<ComponentKey, V> map) {
+        Map<ComponentKey, V> collected = new HashMap<>();
+        for (Map.Entry<ComponentKey, V> entry : map.entrySet()) {
+            if (entry.getKey().get() == null) {
+                collected.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return collected;
+    }
+
+    /**
+     * Returns a copy of <code>map</code> without the entries whose components have been collected.
+     */
+    private static <V> Map<ComponentKey, V> retainLive(Map<ComponentKey, V> map) {
+        Map<ComponentKey, V> live = new HashMap<>();
+        for (Map.Entry<ComponentKey, V> entry : map.entrySet()) {
+            if (entry.getKey().get() != null) {
+                live.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return live;
     }
 
+    /**
+     * The custom effects and effect rules for one transition type. Instances are never modified once they have been
+     * published, so they are safe to read from any thread.
+     */
+    static final class Rules {
+
+        static final Rules EMPTY = new Rules(Collections.<ComponentKey, Effect> emptyMap(),
+                                             Collections.<ComponentKey, EffectFactory> emptyMap(),
+                                             Collections.<Class<?>, EffectFactory> emptyMap(),
+                                             Collections.<Object, Map<Object, EffectFactory>> emptyMap(),
+                                             Collections.<ComponentKey, EffectFactory> emptyMap());
+
+        private final Map<ComponentKey, Effect> effects;
+        private final Map<ComponentKey, EffectFactory> componentFactories;
+        private final Map<Class<?>, EffectFactory> classEffects;
+        // Client property rules are grouped by property key and kept in the
+        // order they were added
+        private final Map<Object, Map<Object, EffectFactory>> clientPropertyEffects;
+        private final Map<ComponentKey, EffectFactory> containerEffects;
+
+        private Rules(Map<ComponentKey, Effect> effects, Map<ComponentKey, EffectFactory> componentFactories,
+                Map<Class<?>, EffectFactory> classEffects,
+                Map<Object, Map<Object, EffectFactory>> clientPropertyEffects,
+                Map<ComponentKey, EffectFactory> containerEffects) {
+            this.effects = effects;
+            this.componentFactories = componentFactories;
+            this.classEffects = classEffects;
+            this.clientPropertyEffects = clientPropertyEffects;
+            this.containerEffects = containerEffects;
+        }
+
+        /**
+         * Returns the effect set for the given component itself, or null.
+         */
+        Effect getEffect(JComponent component) {
+            return effects.isEmpty() ? null : effects.get(new ComponentKey(component, null));
+        }
+
+        /**
+         * Returns the factory set for the given component itself, or null.
+         */
+        EffectFactory getComponentFactory(JComponent component) {
+            return componentFactories.isEmpty() ? null : componentFactories.get(new ComponentKey(component, null));
+        }
+
+        /**
+         * Returns the factory of the first client property rule that matches the given component, or null.
+         */
+        EffectFactory getClientPropertyRule(JComponent component) {
+            for (Map.Entry<Object, Map<Object, EffectFactory>> rulesForKey : clientPropertyEffects.entrySet()) {
+                Object value = component.getClientProperty(rulesForKey.getKey());
+                if (value != null) {
+                    EffectFactory factory = rulesForKey.getValue().get(value);
+                    if (factory != null) {
+                        return factory;
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the factory of the rule for exactly the given class, or null.
+         */
+        EffectFactory getClassRule(Class<?> componentClass) {
+            return classEffects.get(componentClass);
+        }
+
+        boolean hasClassRules() {
+            return !classEffects.isEmpty();
+        }
+
+        /**
+         * Returns the factory of the rule set for exactly the given container, or null.
+         */
+        EffectFactory getContainerRule(JComponent container) {
+            return containerEffects.get(new ComponentKey(container, null));
+        }
+
+        boolean hasContainerRules() {
+            return !containerEffects.isEmpty();
+        }
+
+        /**
+         * Returns the number of effects and rules that are set for individual components, including containers.
+         */
+        int getComponentEntryCount() {
+            return effects.size() + componentFactories.size() + containerEffects.size();
+        }
+    }
+
+    /**
+     * The factory of a stateless effect. Transitions recognize it and take the adapters from their {@link StatePool};
+     * {@link #createEffect(JComponent)} creates a new adapter for other callers.
+     */
+    static final class StatelessFactory implements EffectFactory {
+
+        private final StatelessEffect effect;
+
+        private StatelessFactory(StatelessEffect effect) {
+            this.effect = effect;
+        }
+
+        StatelessEffect getEffect() {
+            return effect;
+        }
+
+        @Override
+        public Effect createEffect(JComponent component) {
+            return new StatelessEffectAdapter(effect, new RenderState());
+        }
+    }
+
+    /**
+     * A weak reference to a component that is equal to any other reference to the same component, as long as the
+     * component has not been collected.
+     */
+    private static final class ComponentKey extends WeakReference<JComponent> {
+
+        private final int hash;
+
+        ComponentKey(JComponent component, ReferenceQueue<JComponent> queue) {
+            super(component, queue);
+            hash = System.identityHashCode(component);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof ComponentKey) {
+                JComponent component = get();
+                return component != null && component == ((ComponentKey) obj).get();
+            }
+            return false;
+        }
+    }
 }
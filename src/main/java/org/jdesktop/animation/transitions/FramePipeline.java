@@ -0,0 +1,320 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.swing.JComponent;
+
+/**
+ * This class composes the frames of a transition on a worker thread while the EDT presents the previous frame.
+ * <p>
+ * On every timing event the EDT picks up the most recently composed frame, if there is one, and then captures the
+ * drawing operations of the next frame: each effect is set up as usual, but instead of painting, the resulting
+ * transform, composite and clip are recorded along with the snapshot image of the component. The worker thread then
+ * composes the captured frame into the back buffer. Frames are handed over through atomic references, so neither
+ * thread ever blocks the other.
+ * <p>
+ * This only works for effects that render an image of their component; effects that re-render the live component must
+ * run on the EDT. {@link AnimationManager#canComposeOffscreen()} tells whether a transition can use this pipeline.
+ */
+class FramePipeline {
+
+    /**
+     * The worker thread that composes frames, shared by all transitions in the application.
+     */
+    private static ExecutorService composer;
+
+    private static synchronized ExecutorService getComposer() {
+        if (composer == null) {
+            composer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "ScreenTransition frame composer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return composer;
+    }
+
+    private final AnimationManager animationManager;
+
+    /**
+     * The surface behind the back buffer. Like the transition image, it only grows, so that a transition that is
+     * started again after its container was resized only reallocates it when the container became larger.
+     */
+    private final GrowableSurface backSurface;
+
+    /**
+     * The two frames between which the pipeline alternates. One of them is presented on screen while the other one is
+     * being composed.
+     */
+    private final Frame[] frames = { new Frame(), new Frame() };
+
+    /** The frame that is currently being displayed by the AnimationLayer. */
+    private Frame presentedFrame;
+
+    /** The most recently composed frame that has not been presented yet; set by the worker, taken by the EDT. */
+    private final AtomicReference<Frame> readyFrame = new AtomicReference<>();
+
+    /** Whether the worker is currently composing a frame. */
+    private final AtomicBoolean composing = new AtomicBoolean();
+
+    /** The result of the last frame submitted to the worker. */
+    private Future<?> pendingFrame;
+
+    /**
+     * Graphics object used to set up the effects while capturing a frame. It belongs to a small private image, so that
+     * capturing never touches an image the worker may be drawing into.
+     */
+    private final Graphics2D captureGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+    /**
+     * Maps container coordinates, in which the drawing operations are captured, to the frame images; set by start().
+     */
+    private final AffineTransform imageTransform = new AffineTransform();
+
+    FramePipeline(AnimationManager animationManager, SurfacePool surfacePool) {
+        this.animationManager = animationManager;
+        backSurface = new GrowableSurface(surfacePool, Transparency.OPAQUE);
+    }
+
+    /**
+     * Called at the start of a transition, after the first frame has been rendered synchronously into
+     * <code>firstImage</code>. The other frame buffer is resized here to match that image.
+     */
+    void start(BufferedImage firstImage, JComponent container) {
+        Rectangle imageBounds = animationManager.getImageBounds();
+        imageTransform.setToTranslation(-imageBounds.x, -imageBounds.y);
+        frames[0].image = firstImage;
+        frames[1].image = backSurface.resize(ComponentState.getGraphicsConfiguration(container),
+                                             firstImage.getWidth(),
+                                             firstImage.getHeight());
+        presentedFrame = frames[0];
+        readyFrame.set(null);
+    }
+
+    /**
+     * Advances the pipeline by one timing event. The most recently composed frame becomes the presented one, and, if
+     * the worker is idle, the next frame is captured and handed to the worker.
+     *
+     * @param dirtyRegion
+     *            set to the area of the container that changed between the previously presented frame and the one
+     *            presented now; empty if no new frame is available yet
+     */
+    void advance(Rectangle dirtyRegion) {
+        // Read the worker state before taking the ready frame: if the worker
+        // was idle, any frame it composed has already been published
+        boolean workerBusy = composing.get();
+        Frame ready = readyFrame.getAndSet(null);
+        if (ready != null) {
+            presentedFrame = ready;
+            dirtyRegion.setBounds(ready.dirtyRegion);
+        } else {
+            dirtyRegion.setBounds(0, 0, 0, 0);
+        }
+        if (!workerBusy) {
+            final Frame next = (presentedFrame == frames[0]) ? frames[1] : frames[0];
+            next.reset();
+            animationManager.capture(captureGraphics, next);
+            composing.set(true);
+            pendingFrame = getComposer().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compose(next);
+                        readyFrame.set(next);
+                    } finally {
+                        composing.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Called at the end of a transition. Waits for a frame that may still be composed by the worker, so that the
+     * images used by the transition are not in use when the next transition starts.
+     */
+    void stop() {
+        if (pendingFrame != null) {
+            try {
+                pendingFrame.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Nothing to do; the frame will just not be shown
+            }
+            pendingFrame = null;
+        }
+        readyFrame.set(null);
+        for (Frame frame : frames) {
+            frame.reset();
+        }
+    }
+
+    /**
+     * Drops the frame images while no transition is running. The first frame is the transition image, which the
+     * caller releases; the other one is returned to the surface pool and acquired again by the next call to start().
+     */
+    void releaseImages() {
+        backSurface.release();
+        frames[0].image = null;
+        frames[1].image = null;
+        presentedFrame = null;
+    }
+
+    /**
+     * Returns the image of the frame that is currently presented.
+     */
+    BufferedImage getPresentedImage() {
+        return presentedFrame.image;
+    }
+
+    /**
+     * Called on the worker thread: composes the background and the captured drawing operations into the frame image.
+     */
+    private void compose(Frame frame) {
+        Graphics2D g = frame.image.createGraphics();
+        animationManager.paintBackground(g);
+        for (int i = 0; i < frame.drawCount; i++) {
+            Graphics2D g2d = (Graphics2D) g.create();
+            g2d.setTransform(imageTransform);
+            g2d.transform(frame.transforms[i]);
+            g2d.setComposite(frame.composites[i]);
+            if (frame.clipped[i]) {
+                Rectangle clip = frame.clips[i];
+                g2d.clipRect(clip.x, clip.y, clip.width, clip.height);
+            }
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.drawImage(frame.images[i], frame.xs[i], frame.ys[i], frame.widths[i], frame.heights[i], null);
+            g2d.dispose();
+        }
+        g.dispose();
+    }
+
+    /**
+     * One frame buffer of the pipeline, with the drawing operations captured for it on the EDT.
+     */
+    static class Frame {
+
+        /** Left in a clip rectangle by getClipBounds() if the captured graphics has no clip. */
+        private static final Rectangle NO_CLIP = new Rectangle(0, 0, -1, -1);
+
+        private BufferedImage image;
+
+        /** The area of the container that changed compared to the previously captured frame. */
+        private final Rectangle dirtyRegion = new Rectangle();
+
+        private int drawCount;
+        private Image[] images = new Image[0];
+        private int[] xs = new int[0];
+        private int[] ys = new int[0];
+        private int[] widths = new int[0];
+        private int[] heights = new int[0];
+        private AffineTransform[] transforms = new AffineTransform[0];
+        private Composite[] composites = new Composite[0];
+        private Rectangle[] clips = new Rectangle[0];
+        private boolean[] clipped = new boolean[0];
+
+        void reset() {
+            dirtyRegion.setBounds(0, 0, 0, 0);
+            Arrays.fill(images, 0, drawCount, null);
+            Arrays.fill(composites, 0, drawCount, null);
+            drawCount = 0;
+        }
+
+        /**
+         * Returns the region of the container covered by this frame's changes, to which captured effects add their
+         * footprints.
+         */
+        Rectangle getDirtyRegion() {
+            return dirtyRegion;
+        }
+
+        /**
+         * Records the drawing of <code>image</code> into the rectangle <code>(x, y, width, height)</code> of the given
+         * graphics state. The transform is copied, so the caller may reuse it. Only the bounds of the clip of
+         * <code>g2d</code> are recorded, which is enough for the clips that the effects of the library set up.
+         */
+        void addDraw(Image image, int x, int y, int width, int height, AffineTransform transform, Composite composite,
+                Graphics2D g2d) {
+            if (drawCount == images.length) {
+                int capacity = Math.max(16, drawCount * 2);
+                images = Arrays.copyOf(images, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                widths = Arrays.copyOf(widths, capacity);
+                heights = Arrays.copyOf(heights, capacity);
+                transforms = Arrays.copyOf(transforms, capacity);
+                composites = Arrays.copyOf(composites, capacity);
+                clips = Arrays.copyOf(clips, capacity);
+                clipped = Arrays.copyOf(clipped, capacity);
+                for (int i = drawCount; i < capacity; i++) {
+                    transforms[i] = new AffineTransform();
+                    clips[i] = new Rectangle();
+                }
+            }
+            images[drawCount] = image;
+            xs[drawCount] = x;
+            ys[drawCount] = y;
+            widths[drawCount] = width;
+            heights[drawCount] = height;
+            transforms[drawCount].setTransform(transform);
+            composites[drawCount] = (composite != null) ? composite : AlphaComposite.SrcOver;
+            Rectangle clip = clips[drawCount];
+            clip.setBounds(NO_CLIP);
+            clipped[drawCount] = !g2d.getClipBounds(clip).equals(NO_CLIP);
+            drawCount++;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Paint;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.AffineTransform;
+
+/**
+ * This class saves the state of a <code>Graphics2D</code> object once and restores it repeatedly. It is used during
+ * the transition to isolate the effects from each other without creating a copy of the <code>Graphics2D</code> for
+ * every effect on every frame: each effect renders into the same object, which is restored to the saved state
+ * afterwards.
+ */
+class GraphicsState {
+
+    /** The Graphics2D whose state is currently saved here. */
+    private Graphics2D owner;
+
+    private final AffineTransform transform = new AffineTransform();
+    private Composite composite;
+    private Shape clip;
+    private Paint paint;
+    private Stroke stroke;
+    private Font font;
+    private Color background;
+    private Object interpolation;
+    private Object antialiasing;
+
+    /**
+     * Saves the state of <code>g2d</code>. Nothing is done if the state of that very object is saved already, so this
+     * may be called on every frame at no cost.
+     */
+    void save(Graphics2D g2d) {
+        if (g2d == owner) {
+            return;
+        }
+        update(g2d);
+    }
+
+    /**
+     * Saves the current state of <code>g2d</code>, even if the state of that object was saved before.
+     */
+    void update(Graphics2D g2d) {
+        owner = g2d;
+        transform.setTransform(g2d.getTransform());
+        composite = g2d.getComposite();
+        clip = g2d.getClip();
+        paint = g2d.getPaint();
+        stroke = g2d.getStroke();
+        font = g2d.getFont();
+        background = g2d.getBackground();
+        interpolation = g2d.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        antialiasing = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+    }
+
+    /**
+     * Restores the saved state into <code>g2d</code>, which must be the object passed to the last call to
+     * {@link #save(Graphics2D)}.
+     */
+    void restore(Graphics2D g2d) {
+        g2d.setTransform(transform);
+        g2d.setComposite(composite);
+        g2d.setClip(clip);
+        g2d.setPaint(paint);
+        g2d.setStroke(stroke);
+        g2d.setFont(font);
+        g2d.setBackground(background);
+        if (interpolation != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+        if (antialiasing != null) {
+            g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+        }
+    }
+
+    /**
+     * Forgets the saved state, so that the Graphics2D object can be garbage collected.
+     */
+    void clear() {
+        owner = null;
+        composite = null;
+        clip = null;
+        paint = null;
+        stroke = null;
+        font = null;
+        background = null;
+    }
+}
@@ -0,0 +1,114 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+
+/**
+ * An image of a size that follows the transition container, backed by a larger surface whose capacity only grows. The
+ * image is a view of the top left corner of the surface (see {@link BufferedImage#getSubimage(int, int, int, int)}),
+ * so rendering into it is clipped to the current size. Shrinking the image, or growing it within the capacity, only
+ * creates a new view; the surface is reallocated, in steps of {@value #GROWTH_STEP} pixels, when the image outgrows it.
+ */
+final class GrowableSurface {
+
+    /** The granularity of the capacity, in pixels. */
+    static final int GROWTH_STEP = 128;
+
+    private final SurfacePool surfacePool;
+    private final int transparency;
+
+    // The surface acquired from the pool, and the configuration it is
+    // compatible with
+    private BufferedImage surface;
+    private GraphicsConfiguration surfaceConfiguration;
+
+    // The view of the current size
+    private BufferedImage image;
+
+    GrowableSurface(SurfacePool surfacePool, int transparency) {
+        this.surfacePool = surfacePool;
+        this.transparency = transparency;
+    }
+
+    /**
+     * Returns an image of the given size, which must be positive. The result is the current image if it has that size
+     * already; otherwise the content of the new image is undefined.
+     */
+    BufferedImage resize(GraphicsConfiguration gc, int width, int height) {
+        if (image != null && image.getWidth() == width && image.getHeight() == height && gc == surfaceConfiguration) {
+            return image;
+        }
+        boolean compatible = surface != null && gc == surfaceConfiguration;
+        if (!compatible || width > surface.getWidth() || height > surface.getHeight()) {
+            int capacityWidth = grow(width, compatible ? surface.getWidth() : 0);
+            int capacityHeight = grow(height, compatible ? surface.getHeight() : 0);
+            release();
+            surface = surfacePool.acquire(gc, capacityWidth, capacityHeight, transparency);
+            surfaceConfiguration = gc;
+        }
+        image = surface.getWidth() == width && surface.getHeight() == height
+                ? surface
+                : surface.getSubimage(0, 0, width, height);
+        return image;
+    }
+
+    /**
+     * Returns the image of the current size, or null if there is none.
+     */
+    BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Returns the surface to the pool; the next call to resize() acquires a new one.
+     */
+    void release() {
+        if (surface != null) {
+            surfacePool.release(surface);
+            surface = null;
+            surfaceConfiguration = null;
+        }
+        image = null;
+    }
+
+    /**
+     * Returns the capacity needed for <code>size</code> pixels, given the current capacity.
+     */
+    private static int grow(int size, int capacity) {
+        int needed = Math.max(size, capacity);
+        return (needed + GROWTH_STEP - 1) / GROWTH_STEP * GROWTH_STEP;
+    }
+}
@@ -0,0 +1,331 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A {@link SurfacePool} that keeps released images for reuse, up to a budget in bytes. The images are allocated in
+ * size buckets, rounded up to a multiple of {@value #BUCKET_SIZE} pixels in each dimension, and handed out as views of
+ * the requested size (see {@link BufferedImage#getSubimage(int, int, int, int)}), so that a component or container
+ * whose size changes slightly between transitions still reuses the same buffer. Released images are matched by bucket,
+ * transparency and graphics configuration. When the released images exceed the budget, the ones released longest ago
+ * are evicted.
+ * <p/>
+ * The hit and miss counts tell how well the pool works for an application: a miss is an acquisition that had to
+ * allocate a new image.
+ */
+public class LruSurfacePool implements SurfacePool {
+
+    /** The granularity of the image sizes, in pixels. */
+    public static final int BUCKET_SIZE = 32;
+
+    /** The budget of the default pool: enough for a few full-screen buffers. */
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final long maxBytes;
+
+    // The released images by bucket, most recently released last
+    private final Map<BucketKey, Deque<BufferedImage>> idleByBucket = new HashMap<>();
+    // All released images, least recently released first
+    private final LinkedHashMap<BufferedImage, BucketKey> idleImages = new LinkedHashMap<>();
+    private long idleBytes;
+
+    // The views that are in use. They are weakly referenced, so that the
+    // images of a transition that is collected without releasing them are
+    // not kept alive by the pool. BufferedImage does not override equals(),
+    // so the views are compared by identity.
+    private final Map<BufferedImage, Lent> lentImages = new WeakHashMap<>();
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * Creates a pool that keeps at most <code>maxBytes</code> bytes of released images.
+     *
+     * @param maxBytes
+     *            the budget for the released images; 0 disables pooling
+     * @throws IllegalArgumentException
+     *             if maxBytes is negative
+     */
+    public LruSurfacePool(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must not be negative");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public synchronized BufferedImage acquire(GraphicsConfiguration gc, int width, int height, int transparency) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+        }
+        BucketKey key = new BucketKey(gc, bucket(width), bucket(height), transparency);
+        BufferedImage image = null;
+        Deque<BufferedImage> idle = idleByBucket.get(key);
+        if (idle != null) {
+            image = idle.pollLast();
+            if (idle.isEmpty()) {
+                idleByBucket.remove(key);
+            }
+        }
+        if (image != null) {
+            hitCount++;
+            idleImages.remove(image);
+            idleBytes -= key.bytes(image);
+            if (transparency != Transparency.OPAQUE) {
+                clear(image, width, height);
+            }
+        } else {
+            missCount++;
+            image = gc.createCompatibleImage(key.width, key.height, transparency);
+        }
+        BufferedImage view = image.getWidth() == width && image.getHeight() == height
+                ? image
+                : image.getSubimage(0, 0, width, height);
+        lentImages.put(view, new Lent(view == image ? null : image, key));
+        return view;
+    }
+
+    @Override
+    public synchronized void release(BufferedImage view) {
+        Lent lent = lentImages.remove(view);
+        if (lent == null) {
+            return;
+        }
+        BufferedImage image = lent.image == null ? view : lent.image;
+        BucketKey key = lent.key;
+        long bytes = key.bytes(image);
+        if (bytes > maxBytes) {
+            image.flush();
+            evictionCount++;
+            return;
+        }
+        Deque<BufferedImage> idle = idleByBucket.get(key);
+        if (idle == null) {
+            idle = new ArrayDeque<>();
+            idleByBucket.put(key, idle);
+        }
+        idle.addLast(image);
+        idleImages.put(image, key);
+        idleBytes += bytes;
+        evict(maxBytes);
+    }
+
+    /**
+     * Evicts all released images. Images that are in use are not affected.
+     */
+    public synchronized void clear() {
+        evict(0);
+    }
+
+    /**
+     * Evicts the least recently released images until the released images take at most the given number of bytes.
+     * Images that are in use are not affected.
+     *
+     * @param bytes
+     *            the number of bytes that the released images may take
+     */
+    public synchronized void trimTo(long bytes) {
+        evict(Math.max(0, bytes));
+    }
+
+    /**
+     * Evicts the least recently released images until the released images take at most <code>limit</code> bytes.
+     */
+    private void evict(long limit) {
+        Iterator<Map.Entry<BufferedImage, BucketKey>> it = idleImages.entrySet().iterator();
+        while (idleBytes > limit && it.hasNext()) {
+            Map.Entry<BufferedImage, BucketKey> entry = it.next();
+            BufferedImage image = entry.getKey();
+            BucketKey key = entry.getValue();
+            it.remove();
+            Deque<BufferedImage> idle = idleByBucket.get(key);
+            idle.remove(image);
+            if (idle.isEmpty()) {
+                idleByBucket.remove(key);
+            }
+            idleBytes -= key.bytes(image);
+            image.flush();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Returns the budget for the released images, in bytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the number of bytes taken by the released images that are kept for reuse.
+     */
+    public synchronized long getPooledBytes() {
+        return idleBytes;
+    }
+
+    /**
+     * Returns the number of released images that are kept for reuse.
+     */
+    public synchronized int getPooledImageCount() {
+        return idleImages.size();
+    }
+
+    /**
+     * Returns the number of images that are in use.
+     */
+    public synchronized int getAcquiredImageCount() {
+        return lentImages.size();
+    }
+
+    /**
+     * Returns the number of acquisitions that reused a released image.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of acquisitions that allocated a new image.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of released images that were dropped to stay within the budget.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counts to 0.
+     */
+    public synchronized void resetStatistics() {
+        hitCount = missCount = evictionCount = 0;
+    }
+
+    private static int bucket(int size) {
+        return (size + BUCKET_SIZE - 1) / BUCKET_SIZE * BUCKET_SIZE;
+    }
+
+    /**
+     * Makes the given area of a reused image fully transparent.
+     */
+    private static void clear(BufferedImage image, int width, int height) {
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+    }
+
+    /**
+     * A view in use: the pooled image it belongs to, or null if it is the pooled image itself, and its bucket.
+     */
+    private static final class Lent {
+
+        private final BufferedImage image;
+        private final BucketKey key;
+
+        Lent(BufferedImage image, BucketKey key) {
+            this.image = image;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Identifies the images that can be used for the same requests.
+     */
+    private static final class BucketKey {
+
+        private final GraphicsConfiguration gc;
+        private final int width;
+        private final int height;
+        private final int transparency;
+
+        BucketKey(GraphicsConfiguration gc, int width, int height, int transparency) {
+            this.gc = gc;
+            this.width = width;
+            this.height = height;
+            this.transparency = transparency;
+        }
+
+        /**
+         * Returns the approximate number of bytes taken by an image of this bucket.
+         */
+        long bytes(BufferedImage image) {
+            int bytesPerPixel = (image.getColorModel().getPixelSize() + 7) / 8;
+            return (long) width * height * bytesPerPixel;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 17;
+            result = 37 * result + System.identityHashCode(gc);
+            result = 37 * result + width;
+            result = 37 * result + height;
+            result = 37 * result + transparency;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof BucketKey) {
+                BucketKey other = (BucketKey) obj;
+                return gc == other.gc
+                       && width == other.width
+                       && height == other.height
+                       && transparency == other.transparency;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.EventQueue;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * This class accounts for the images held by one <code>ScreenTransition</code>. The transition acquires its images
+ * through the two pools of its account: one for the snapshots of the components, and one for the buffers that the
+ * frames are composed from and into. Both pass the requests on to the <code>SurfacePool</code> of the transition and
+ * record the size of every image until it is released. Each acquisition lets {@link TransitionMemory} enforce the
+ * global budget.
+ */
+final class MemoryAccount {
+
+    private final SurfacePool surfacePool;
+
+    /** Releases the buffers of the transition while it is idle, so that they can be evicted. */
+    private final Runnable bufferRelease;
+
+    private final Tracker snapshots = new Tracker();
+    private final Tracker buffers = new Tracker();
+
+    // Whether the transition is running, and when it last ran or was created
+    private volatile boolean active;
+    private volatile long lastUsed = System.nanoTime();
+
+    MemoryAccount(SurfacePool surfacePool, Runnable bufferRelease) {
+        this.surfacePool = surfacePool;
+        this.bufferRelease = bufferRelease;
+    }
+
+    SurfacePool getSurfacePool() {
+        return surfacePool;
+    }
+
+    /**
+     * Returns the pool for the snapshots of the components, and the atlases they are packed in.
+     */
+    SurfacePool getSnapshotPool() {
+        return snapshots;
+    }
+
+    /**
+     * Returns the pool for the background and transition images.
+     */
+    SurfacePool getBufferPool() {
+        return buffers;
+    }
+
+    synchronized long getSnapshotBytes() {
+        return snapshots.bytes;
+    }
+
+    synchronized long getBufferBytes() {
+        return buffers.bytes;
+    }
+
+    /**
+     * Marks the transition as running or idle. The buffers of a running transition are never evicted.
+     */
+    void setActive(boolean active) {
+        this.active = active;
+        lastUsed = System.nanoTime();
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Asks the idle transition to release its buffers; they are acquired again when it runs next. The buffers are only
+     * used on the EDT, where the transition may start again at any time, so they are released there. When called from
+     * another thread, the release is posted to the EDT, and the budget is enforced again once the buffers are back in
+     * their pool.
+     */
+    void releaseBuffers() {
+        if (EventQueue.isDispatchThread()) {
+            if (!active) {
+                bufferRelease.run();
+            }
+            return;
+        }
+        EventQueue.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                // The transition may have started since the release was posted
+                if (!active) {
+                    bufferRelease.run();
+                    TransitionMemory.enforceBudget(null);
+                }
+            }
+        });
+    }
+
+    /**
+     * Records the images of one kind that are acquired and released through it.
+     */
+    private final class Tracker implements SurfacePool {
+
+        private final Map<BufferedImage, Long> sizes = new IdentityHashMap<>();
+        private long bytes;
+
+        @Override
+        public BufferedImage acquire(GraphicsConfiguration gc, int width, int height, int transparency) {
+            BufferedImage image = surfacePool.acquire(gc, width, height, transparency);
+            long size = TransitionMemory.getByteSize(image);
+            synchronized (MemoryAccount.this) {
+                sizes.put(image, size);
+                bytes += size;
+            }
+            TransitionMemory.enforceBudget(MemoryAccount.this);
+            return image;
+        }
+
+        @Override
+        public void release(BufferedImage image) {
+            synchronized (MemoryAccount.this) {
+                Long size = sizes.remove(image);
+                if (size != null) {
+                    bytes -= size;
+                }
+            }
+            surfacePool.release(image);
+        }
+    }
+}
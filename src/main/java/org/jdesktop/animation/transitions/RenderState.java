@@ -0,0 +1,137 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+package org.jdesktop.animation.transitions;
+
+/**
+ * This class holds what a {@link StatelessEffect} computes for one component in one frame: where the component is
+ * drawn, at which size, how opaque and how rotated. Each transition has its own instance, which is reused for all of
+ * its components and frames, so stateless effects must not keep a reference to it.
+ */
+public final class RenderState {
+
+    private double x;
+    private double y;
+    private double width;
+    private double height;
+    private float opacity;
+    private double rotation;
+    private double rotationX;
+    private double rotationY;
+
+    RenderState() {
+    }
+
+    /**
+     * Resets this state to draw the component as described by <code>state</code>: at its location and size, opaque and
+     * not rotated.
+     */
+    void reset(ComponentState state) {
+        x = state.getX();
+        y = state.getY();
+        width = state.getWidth();
+        height = state.getHeight();
+        opacity = 1f;
+        rotation = rotationX = rotationY = 0;
+    }
+
+    /**
+     * Sets the location of the top left corner of the component, in the coordinates of the transition container.
+     */
+    public void setLocation(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Sets the size that the component is drawn at.
+     */
+    public void setSize(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Sets the opacity of the component, from 0 (invisible) to 1 (opaque).
+     */
+    public void setOpacity(float opacity) {
+        this.opacity = opacity;
+    }
+
+    /**
+     * Sets the rotation of the component.
+     *
+     * @param radians
+     *            the angle of the rotation
+     * @param centerX
+     *            the x coordinate of the center of the rotation, relative to the component
+     * @param centerY
+     *            the y coordinate of the center of the rotation, relative to the component
+     */
+    public void setRotation(double radians, double centerX, double centerY) {
+        rotation = radians;
+        rotationX = centerX;
+        rotationY = centerY;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    public float getOpacity() {
+        return opacity;
+    }
+
+    public double getRotation() {
+        return rotation;
+    }
+
+    public double getRotationX() {
+        return rotationX;
+    }
+
+    public double getRotationY() {
+        return rotationY;
+    }
+}
@@ -35,6 +35,10 @@ package org.jdesktop.animation.transitions;
 
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.image.BufferedImage;
@@ -42,6 +46,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.JComponent;
+import javax.swing.Timer;
 
 import org.jdesktop.core.animation.timing.Animator;
 import org.jdesktop.core.animation.timing.TimingTarget;
@@ -60,6 +65,32 @@ import org.jdesktop.core.animation.timing.TimingTargetAdapter;
 public class ScreenTransition {
     private static final Integer DEFAULT_LAYER_ID = 301;
 
+    /** How long the container size must be stable before the transition images are resized, in milliseconds. */
+    private static final int RESIZE_DELAY = 250;
+
+    /**
+     * What a transition does with its transition images between runs. The transition image and the background image
+     * are each as large as the transition container, so keeping them avoids allocating them at the start of every
+     * transition, at the cost of holding that memory while the transition is idle. Released images are returned to the
+     * {@link SurfacePool} of the transition and acquired again when it starts next.
+     */
+    public static enum ImageRetention {
+        /**
+         * Keeps the images until the transition is disposed, or evicted by {@link TransitionMemory}. This is the
+         * default, and suits transitions that run often.
+         */
+        KEEP_WARM,
+        /**
+         * Releases the images once the transition has been idle for the release delay; see
+         * {@link Builder#setReleaseDelay(long, TimeUnit)}.
+         */
+        RELEASE_AFTER_IDLE,
+        /**
+         * Releases the images as soon as the transition ends. This suits transitions that run rarely.
+         */
+        RELEASE_IMMEDIATELY
+    }
+
     /**
      * Sets the passed effects manager as the default used for the construction of transitions. If no effects manager is
      * explicitly set, a default is used.
@@ -74,6 +105,20 @@ public class ScreenTransition {
         return Builder.getDefaultEffectsManager();
     }
 
+    /**
+     * Sets the passed surface pool as the default used for the construction of transitions. If no surface pool is
+     * explicitly set, a shared {@link LruSurfacePool} is used.
+     * 
+     * Passing {@code null} to this method resets the surface pool to the default.
+     */
+    public static void setDefaultSurfacePool(SurfacePool surfacePool) {
+        Builder.setDefaultSurfacePool(surfacePool);
+    }
+
+    public static SurfacePool getDefaultSurfacePool() {
+        return Builder.getDefaultSurfacePool();
+    }
+
     /*
      * Implementation detail: The key to making ScreenTransition work correctly is having two different views or layers
      * of ScreenTransition under the covers. One layer is the "containerLayer", which is where the actual child
@@ -114,6 +159,39 @@ public class ScreenTransition {
      */
     private BufferedImage transitionImage;
 
+    /**
+     * The surface that transitionImage is a view of; its capacity only grows when the container is resized.
+     */
+    private final GrowableSurface transitionSurface;
+
+    /**
+     * The area of the container, in container coordinates, that transitionImage covers: the visible area of the
+     * container when the images were last created.
+     */
+    private final Rectangle transitionImageBounds = new Rectangle();
+
+    /**
+     * The source of transitionImage and of the images used by the animationManager.
+     */
+    private final SurfacePool surfacePool;
+
+    /**
+     * Accounts for the images acquired from the surfacePool; see {@link TransitionMemory}.
+     */
+    private final MemoryAccount memoryAccount;
+
+    /**
+     * Graphics object used to render into transitionImage. It is kept for the duration of a transition, so that no
+     * new Graphics object has to be created for every frame.
+     */
+    private Graphics2D transitionGraphics;
+
+    /**
+     * The image that transitionGraphics renders into; transitionImage may be recreated during a transition if the
+     * container is resized.
+     */
+    private BufferedImage transitionGraphicsImage;
+
     /**
      * The user-defined code which ScreenTransition will call to setup the next state of the GUI when a transition is
      * started.
@@ -125,6 +203,58 @@ public class ScreenTransition {
      */
     private Animator animator = null;
 
+    /**
+     * The area of the container that changed in the most recently rendered frame. Only this area of the animationLayer
+     * is repainted.
+     */
+    private final Rectangle dirtyRegion = new Rectangle();
+
+    /**
+     * Set at the start of each transition, so that the first frame repaints the whole animationLayer.
+     */
+    private boolean fullRepaintNeeded;
+
+    /**
+     * Whether frames should be composed on a worker thread when the effects of a transition allow it.
+     */
+    private boolean pipelinedPainting;
+
+    /**
+     * Composes frames on a worker thread. Created when pipelined painting is enabled, and only used for transitions in
+     * which all effects render from snapshot images.
+     */
+    private FramePipeline framePipeline;
+
+    /**
+     * Whether the current transition is composed by the framePipeline.
+     */
+    private boolean pipelineActive;
+
+    /**
+     * What happens to the transition images when a transition ends.
+     */
+    private ImageRetention imageRetention = ImageRetention.KEEP_WARM;
+
+    /**
+     * Releases the transition images after the release delay, if the imageRetention is RELEASE_AFTER_IDLE.
+     */
+    private final Timer releaseTimer;
+
+    /**
+     * Resizes the transition images once the container has stopped being resized.
+     */
+    private final Timer resizeTimer;
+
+    /**
+     * Recreates the transition images when the container is resized; detached while the transition is disposed.
+     */
+    private final ContainerSizeListener sizeListener = new ContainerSizeListener();
+
+    /**
+     * Whether dispose() has been called since the last transition.
+     */
+    private boolean disposed;
+
     public static class Builder {
         private static AtomicReference<EffectsManager> globalEffectsManager = new AtomicReference<>(new EffectsManager());
 
@@ -146,11 +276,28 @@ public class ScreenTransition {
             return globalEffectsManager.get();
         }
 
+        private static final SurfacePool sharedSurfacePool = new LruSurfacePool(LruSurfacePool.DEFAULT_MAX_BYTES);
+        private static AtomicReference<SurfacePool> globalSurfacePool = new AtomicReference<>(sharedSurfacePool);
+
+        static void setDefaultSurfacePool(SurfacePool surfacePool) {
+            globalSurfacePool.set(surfacePool == null ? sharedSurfacePool : surfacePool);
+        }
+
+        static SurfacePool getDefaultSurfacePool() {
+            return globalSurfacePool.get();
+        }
+
         private final JComponent transitionComponent;
         private final TransitionTarget transitionTarget;
 
         private Animator animator = null;
         private EffectsManager effectsManager;
+        private SurfacePool surfacePool;
+        private boolean incrementalPainting = false;
+        private boolean pipelinedPainting = false;
+        private boolean mipmappedSnapshots = false;
+        private ImageRetention imageRetention = ImageRetention.KEEP_WARM;
+        private long releaseDelayInMillis = 10000;
 
         public Builder(JComponent transitionComponent, TransitionTarget transitionTarget) {
             this.transitionComponent = transitionComponent;
@@ -202,6 +349,99 @@ public class ScreenTransition {
             return this;
         }
 
+        /**
+         * Sets the pool that this transition acquires its offscreen images from. The default pool is the global
+         * default; sharing one pool between transitions lets them reuse each other's images.
+         * 
+         * @param surfacePool
+         *            the surface pool used for this transition
+         */
+        public Builder setSurfacePool(SurfacePool surfacePool) {
+            this.surfacePool = surfacePool;
+            return this;
+        }
+
+        /**
+         * Sets whether the frames of the transition are composed incrementally. In this mode only the background under
+         * the areas that the effects covered in the previous and the current frame is restored, and only the effects
+         * overlapping those areas are rendered again, so that the cost of a frame depends on the animated area instead
+         * of the size of the container. The default is <code>false</code>.
+         *
+         * @param incrementalPainting
+         *            whether frames are composed incrementally
+         */
+        public Builder setIncrementalPainting(boolean incrementalPainting) {
+            this.incrementalPainting = incrementalPainting;
+            return this;
+        }
+
+        /**
+         * Sets whether the frames of the transition are composed on a worker thread. In this mode the EDT only sets up
+         * the effects and presents the previous frame, while the next frame is composed from the component snapshots
+         * in the background. Transitions containing effects that re-render their components (see
+         * {@link Effect#setRenderComponent(boolean)}) are always composed on the EDT. The default is
+         * <code>false</code>.
+         *
+         * @param pipelinedPainting
+         *            whether frames are composed on a worker thread when possible
+         */
+        public Builder setPipelinedPainting(boolean pipelinedPainting) {
+            this.pipelinedPainting = pipelinedPainting;
+            return this;
+        }
+
+        /**
+         * Sets whether smaller copies of the component snapshots are kept for effects that draw them at a small size.
+         * A snapshot drawn at less than half its size is then drawn from a copy of half, a quarter, an eighth... of its
+         * size, whichever is the smallest that is still larger than the destination. This makes transitions that
+         * shrink large components cheaper per frame and avoids the aliasing of a large reduction in one step, at the
+         * cost of up to a third more memory for the snapshots that are shrunk. The copies are created when they are
+         * first needed. The default is <code>false</code>.
+         *
+         * @param mipmappedSnapshots
+         *            whether reduced copies of the snapshots are used for small destinations
+         */
+        public Builder setMipmappedSnapshots(boolean mipmappedSnapshots) {
+            this.mipmappedSnapshots = mipmappedSnapshots;
+            return this;
+        }
+
+        /**
+         * Sets what the transition does with its transition images between runs. The default is
+         * {@link ImageRetention#KEEP_WARM}.
+         *
+         * @param imageRetention
+         *            the retention policy for the transition images
+         * @throws IllegalArgumentException
+         *             imageRetention must be non-null
+         */
+        public Builder setImageRetention(ImageRetention imageRetention) {
+            if (imageRetention == null) {
+                throw new IllegalArgumentException("ImageRetention must be non-null");
+            }
+            this.imageRetention = imageRetention;
+            return this;
+        }
+
+        /**
+         * Sets how long the transition must be idle before its images are released, if the image retention is
+         * {@link ImageRetention#RELEASE_AFTER_IDLE}. The default is 10 seconds.
+         *
+         * @param delay
+         *            the idle time after which the images are released
+         * @param unit
+         *            the unit of delay
+         * @throws IllegalArgumentException
+         *             if delay is negative
+         */
+        public Builder setReleaseDelay(long delay, TimeUnit unit) {
+            if (delay < 0) {
+                throw new IllegalArgumentException("Release delay must not be negative");
+            }
+            this.releaseDelayInMillis = Math.min(unit.toMillis(delay), Integer.MAX_VALUE);
+            return this;
+        }
+
         /**
          * Constructs a screen transition with the settings defined by this builder.
          *
@@ -215,47 +455,166 @@ public class ScreenTransition {
                 throw new IllegalArgumentException("Either an animator or a duration must be provided.");
 
             EffectsManager customEffectManager = effectsManager == null ? globalEffectsManager.get() : effectsManager;
-            return new ScreenTransition(transitionComponent, transitionTarget, customEffectManager, animator);
+            SurfacePool customSurfacePool = surfacePool == null ? globalSurfacePool.get() : surfacePool;
+            ScreenTransition transition = new ScreenTransition(transitionComponent,
+                                                               transitionTarget,
+                                                               customEffectManager,
+                                                               customSurfacePool,
+                                                               animator);
+            transition.animationManager.setIncrementalPainting(incrementalPainting);
+            transition.animationManager.setMipmappedSnapshots(mipmappedSnapshots);
+            transition.pipelinedPainting = pipelinedPainting;
+            transition.imageRetention = imageRetention;
+            transition.releaseTimer.setInitialDelay((int) releaseDelayInMillis);
+            return transition;
         }
     }
 
     private ScreenTransition(JComponent containerLayer,
             TransitionTarget transitionTarget,
             EffectsManager effectsManager,
+            SurfacePool surfacePool,
             Animator animator) {
         this.containerLayer = containerLayer;
         this.transitionTarget = transitionTarget;
+        this.surfacePool = surfacePool;
+        memoryAccount = new MemoryAccount(surfacePool, new Runnable() {
+
+            @Override
+            public void run() {
+                releaseTransitionImages();
+            }
+        });
 
-        animationManager = new AnimationManager(effectsManager, containerLayer);
+        transitionSurface = new GrowableSurface(memoryAccount.getBufferPool(), Transparency.OPAQUE);
+        animationManager = new AnimationManager(effectsManager,
+                                                containerLayer,
+                                                memoryAccount.getBufferPool(),
+                                                memoryAccount.getSnapshotPool());
         animationLayer = new AnimationLayer(this);
         animationLayer.setVisible(false);
-        containerLayer.addComponentListener(new ContainerSizeListener());
+        containerLayer.addComponentListener(sizeListener);
+        releaseTimer = new Timer(0, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                releaseTransitionImages();
+            }
+        });
+        releaseTimer.setRepeats(false);
+        resizeTimer = new Timer(RESIZE_DELAY, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                resizeTransitionImages();
+            }
+        });
+        resizeTimer.setRepeats(false);
+        TransitionMemory.register(memoryAccount);
         createTransitionImages();
         setAnimator(animator);
     }
 
     /**
-     * Create the transition images here and in AnimationManager if necessary.
+     * Create the transition images here and in AnimationManager if necessary. The images only cover the visible area
+     * of the container, as nothing else is shown during the transition. They are views of surfaces that are only
+     * reallocated when the visible area outgrows them; a smaller area just uses part of them.
      */
     private void createTransitionImages() {
-        int cw = containerLayer.getWidth();
-        int ch = containerLayer.getHeight();
-        if ((cw > 0 && ch > 0)
-            && (transitionImage == null || transitionImage.getWidth() != cw || transitionImage.getHeight() != ch)) {
-            // Recreate transition image and background for new dimensions
-            transitionImage = (BufferedImage) containerLayer.createImage(cw, ch);
-            animationManager.recreateImage();
+        Rectangle visibleRect = containerLayer.getVisibleRect();
+        if (visibleRect.isEmpty()) {
+            // The container is scrolled out of view; the transition still
+            // needs images, but nothing of them will be seen
+            visibleRect.setSize(Math.min(containerLayer.getWidth(), 1), Math.min(containerLayer.getHeight(), 1));
+        }
+        if (!visibleRect.isEmpty()) {
+            transitionImageBounds.setBounds(visibleRect);
+            transitionImage = transitionSurface.resize(ComponentState.getGraphicsConfiguration(containerLayer),
+                    visibleRect.width,
+                    visibleRect.height);
+            animationManager.recreateImage(visibleRect);
+        }
+    }
+
+    /**
+     * Resizes the transition images after the container has been resized, unless a transition is running or the
+     * images have been released; released images stay released until the next transition.
+     */
+    private void resizeTransitionImages() {
+        if (!animator.isRunning() && transitionImage != null) {
+            createTransitionImages();
+        }
+    }
+
+    /**
+     * Releases the transition images while no transition is running, so that they can be evicted to stay within the
+     * budget of {@link TransitionMemory}. They are recreated when the next transition begins.
+     */
+    private void releaseTransitionImages() {
+        if (memoryAccount.isActive()) {
+            return;
+        }
+        disposeTransitionGraphics();
+        if (framePipeline != null) {
+            framePipeline.releaseImages();
+        }
+        transitionSurface.release();
+        transitionImage = null;
+        animationManager.releaseImage();
+    }
+
+    /**
+     * Releases the images held by this transition and stops listening to its container. Applications with many
+     * transition containers that are rarely used can call this to reclaim the memory of the transitions that are not
+     * needed for a while; see also {@link Builder#setImageRetention(ImageRetention)}. A disposed transition can still
+     * be started, in which case it acquires new images first.
+     *
+     * @throws IllegalStateException
+     *             if the transition is running
+     */
+    public void dispose() {
+        if (animator.isRunning()) {
+            throw new IllegalStateException("Cannot dispose a transition " + "while it is running");
+        }
+        releaseTimer.stop();
+        resizeTimer.stop();
+        releaseTransitionImages();
+        if (!disposed) {
+            containerLayer.removeComponentListener(sizeListener);
+            disposed = true;
+        }
+    }
+
+    /**
+     * Applies the imageRetention once a transition has ended.
+     */
+    private void retainTransitionImages() {
+        switch (imageRetention) {
+        case RELEASE_IMMEDIATELY:
+            releaseTransitionImages();
+            break;
+        case RELEASE_AFTER_IDLE:
+            releaseTimer.restart();
+            break;
+        default:
+            break;
         }
     }
 
     /**
      * Listen for changes to the transition container size and recreate transition images as necessary. Doing this on
      * component size change events prevents having to do it as needed at the start of the next transition, which can
-     * cause a unwanted delay in that animation.
+     * cause a unwanted delay in that animation. The images are only resized once the size has been stable for
+     * {@link #RESIZE_DELAY} milliseconds, so that dragging a window edge does not allocate images for every
+     * intermediate size. While a transition is running, the images are in use and are left alone; the next transition
+     * resizes them when it begins.
      */
     private class ContainerSizeListener extends ComponentAdapter {
         public void componentResized(ComponentEvent ce) {
-            createTransitionImages();
+            if (animator.isRunning()) {
+                return;
+            }
+            resizeTimer.restart();
         }
     }
 
@@ -287,14 +646,99 @@ public class ScreenTransition {
         animator.addTarget(transitionTimingTarget);
     }
 
+    /**
+     * Returns the number of component snapshots that the current or last transition did not need to take. A snapshot
+     * is skipped when the component was outside the visible area of the transition container, did not change between
+     * the screens, or was rendered live by its effect. This is intended as a diagnostic for transitions over large,
+     * scrolling containers.
+     *
+     * @return the number of skipped component snapshots
+     */
+    public int getSkippedSnapshotCount() {
+        return animationManager.getSkippedSnapshotCount();
+    }
+
+    /**
+     * Returns the number of component draws that the current or last transition skipped because the component was
+     * completely hidden behind an opaque, fully visible and untransformed component animating above it.
+     *
+     * @return the number of draws culled by occlusion
+     */
+    public int getOccludedDrawCount() {
+        return animationManager.getOccludedDrawCount();
+    }
+
+    /**
+     * Returns the pool that this transition acquires its offscreen images from.
+     *
+     * @return the surface pool of this transition
+     */
+    public SurfacePool getSurfacePool() {
+        return surfacePool;
+    }
+
+    /**
+     * Returns the number of bytes taken by the component snapshots of this transition. Snapshots are only held while
+     * the transition runs.
+     *
+     * @return the number of bytes taken by snapshots
+     */
+    public long getSnapshotBytes() {
+        return memoryAccount.getSnapshotBytes();
+    }
+
+    /**
+     * Returns the number of bytes taken by the transition and background images of this transition, including the
+     * back buffer of pipelined painting. These are kept between transitions unless they are evicted by
+     * {@link TransitionMemory}.
+     *
+     * @return the number of bytes taken by the transition buffers
+     */
+    public long getBufferBytes() {
+        return memoryAccount.getBufferBytes();
+    }
+
     /**
      * Returns image used during timingEvent rendering. This is called by AnimationLayer to get the contents for the
      * layered pane
      */
     Image getTransitionImage() {
+        if (pipelineActive) {
+            return framePipeline.getPresentedImage();
+        }
         return transitionImage;
     }
 
+    /**
+     * Returns the area of the container, in container coordinates, that the image returned by
+     * {@link #getTransitionImage()} covers.
+     */
+    Rectangle getTransitionImageBounds() {
+        return transitionImageBounds;
+    }
+
+    /**
+     * Returns the Graphics object used to render the frames into transitionImage, creating it if needed. It is
+     * translated so that the frames are rendered in container coordinates.
+     */
+    private Graphics2D getTransitionGraphics() {
+        if (transitionGraphics == null || transitionGraphicsImage != transitionImage) {
+            disposeTransitionGraphics();
+            transitionGraphics = transitionImage.createGraphics();
+            transitionGraphics.translate(-transitionImageBounds.x, -transitionImageBounds.y);
+            transitionGraphicsImage = transitionImage;
+        }
+        return transitionGraphics;
+    }
+
+    private void disposeTransitionGraphics() {
+        if (transitionGraphics != null) {
+            transitionGraphics.dispose();
+            transitionGraphics = null;
+            transitionGraphicsImage = null;
+        }
+    }
+
     /**
      * Begin the transition from the current application state to the next one. This method will start the transition's
      * {@link Animator} which will cause the transition to begin. This will result in a call into the
@@ -329,6 +773,14 @@ public class ScreenTransition {
          */
         @Override
         public void begin(Animator source) {
+            memoryAccount.setActive(true);
+            releaseTimer.stop();
+            resizeTimer.stop();
+            if (disposed) {
+                containerLayer.addComponentListener(sizeListener);
+                disposed = false;
+            }
+
             // Make sure that our background images exist and is the right size
             createTransitionImages();
 
@@ -373,24 +825,47 @@ public class ScreenTransition {
 
             // workaround: need layered pane to reflect initial contents when we
             // exit this function to avoid flash of blank container
+            fullRepaintNeeded = true;
+            pipelineActive = false;
             timingEvent(source, 0);
+
+            // Compose the remaining frames on the worker thread if all
+            // effects can be rendered from snapshots
+            if (pipelinedPainting && animationManager.canComposeOffscreen()) {
+                if (framePipeline == null) {
+                    framePipeline = new FramePipeline(animationManager, memoryAccount.getBufferPool());
+                }
+                framePipeline.start(transitionImage, containerLayer);
+                pipelineActive = true;
+            }
         }
 
         /**
          * Implementation of the <code>TimingTarget</code> interface. This method is called repeatedly during the
-         * transition animation. We force a repaint, which causes the current transition state to be rendered.
+         * transition animation. We force a repaint of the area that changed, which causes the current transition state
+         * to be rendered.
          */
         @Override
         public void timingEvent(Animator source, double elapsedFraction) {
-            Graphics2D gImg = (Graphics2D) transitionImage.getGraphics();
+            if (pipelineActive) {
+                // Present the last frame composed by the worker and
+                // capture the next one
+                framePipeline.advance(dirtyRegion);
+                animationLayer.repaintTransitionRegion(dirtyRegion);
+                return;
+            }
 
             // Render this frame of the animation
-            animationManager.paint(gImg);
-
-            gImg.dispose();
+            animationManager.paint(getTransitionGraphics(), dirtyRegion);
 
-            // Force transitionImage to be copied to the layered pane
-            animationLayer.repaint();
+            // Force the changed part of transitionImage to be copied to the
+            // layered pane
+            if (fullRepaintNeeded) {
+                fullRepaintNeeded = false;
+                animationLayer.repaint();
+            } else {
+                animationLayer.repaintTransitionRegion(dirtyRegion);
+            }
         }
 
         /**
@@ -399,12 +874,19 @@ public class ScreenTransition {
          */
         @Override
         public void end(Animator source) {
+            if (pipelineActive) {
+                framePipeline.stop();
+                pipelineActive = false;
+            }
             containerLayer.getRootPane().getLayeredPane().remove(animationLayer);
             containerLayer.setVisible(true);
             containerLayer.repaint();
             // Reset the AnimationManager (this releases all previous transition
             // data structures)
             animationManager.reset(animator);
+            disposeTransitionGraphics();
+            memoryAccount.setActive(false);
+            retainTransitionImages();
         }
     };
 }
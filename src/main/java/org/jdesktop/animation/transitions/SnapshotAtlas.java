@@ -0,0 +1,164 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JComponent;
+
+/**
+ * This class captures the snapshots of many components at once. Instead of creating a separate image and Graphics for
+ * every component, the snapshots are packed in rows into a few large "atlas" images. Each component is painted into
+ * its own cell of an atlas through a single Graphics object per atlas, which keeps the components isolated from each
+ * other, and each <code>ComponentState</code> receives a view of its cell (see
+ * {@link BufferedImage#getSubimage(int, int, int, int)}) as its snapshot; no pixels are copied. Opaque components are
+ * packed into opaque atlases, so that their snapshots are drawn without blending, and all other components into
+ * translucent ones. The atlas images are acquired from a {@link SurfacePool} and belong to the caller, which releases
+ * them once the snapshots are not needed anymore.
+ */
+class SnapshotAtlas {
+
+    /** The maximum width of an atlas image, unless a single component is wider. */
+    private static final int MAX_ATLAS_WIDTH = 2048;
+    /** The maximum height of an atlas image; further components start a new atlas. */
+    private static final int MAX_ATLAS_HEIGHT = 2048;
+
+    private SnapshotAtlas() {
+    }
+
+    /**
+     * Captures the snapshots of all given component states, which must have been created without a snapshot. Each cell
+     * holds the snapshot area of its state (see {@link ComponentState#getSnapshotArea()}). States with an empty
+     * snapshot area are skipped, as they do not need a snapshot.
+     *
+     * @param states
+     *            the component states to capture
+     * @param container
+     *            the transition container, used to create images compatible with the screen
+     * @param surfacePool
+     *            the pool that the atlas images are acquired from
+     * @param atlases
+     *            receives the atlas images, which must be released to the pool when the snapshots are dropped
+     */
+    static void capture(List<ComponentState> states, JComponent container, SurfacePool surfacePool,
+            List<BufferedImage> atlases) {
+        GraphicsConfiguration gc = ComponentState.getGraphicsConfiguration(container);
+        List<ComponentState> opaqueStates = new ArrayList<>();
+        List<ComponentState> translucentStates = new ArrayList<>();
+        for (ComponentState state : states) {
+            if (state.getComponent().isOpaque()) {
+                opaqueStates.add(state);
+            } else {
+                translucentStates.add(state);
+            }
+        }
+        capture(opaqueStates, gc, Transparency.OPAQUE, surfacePool, atlases);
+        capture(translucentStates, gc, Transparency.TRANSLUCENT, surfacePool, atlases);
+    }
+
+    /**
+     * Captures the snapshots of the given states into atlases of the given transparency.
+     */
+    private static void capture(List<ComponentState> states, GraphicsConfiguration gc, int transparency,
+            SurfacePool surfacePool, List<BufferedImage> atlases) {
+        // Lay out the cells in rows, starting a new atlas whenever one is full
+        int count = states.size();
+        Rectangle[] areas = new Rectangle[count];
+        int atlasWidth = MAX_ATLAS_WIDTH;
+        for (int i = 0; i < count; i++) {
+            areas[i] = states.get(i).getSnapshotArea();
+            atlasWidth = Math.max(atlasWidth, areas[i].width);
+        }
+        int[] cellX = new int[count];
+        int[] cellY = new int[count];
+        int[] cellAtlas = new int[count];
+        List<int[]> atlasSizes = new ArrayList<>();
+        int x = 0, y = 0, rowHeight = 0, usedWidth = 0;
+        for (int i = 0; i < count; i++) {
+            int w = areas[i].width;
+            int h = areas[i].height;
+            if (w <= 0 || h <= 0) {
+                cellAtlas[i] = -1;
+                continue;
+            }
+            if (x + w > atlasWidth) {
+                // start a new row
+                x = 0;
+                y += rowHeight;
+                rowHeight = 0;
+            }
+            if (y + h > MAX_ATLAS_HEIGHT && y > 0) {
+                // start a new atlas
+                atlasSizes.add(new int[] { usedWidth, y + rowHeight });
+                x = y = rowHeight = usedWidth = 0;
+            }
+            cellX[i] = x;
+            cellY[i] = y;
+            cellAtlas[i] = atlasSizes.size();
+            x += w;
+            rowHeight = Math.max(rowHeight, h);
+            usedWidth = Math.max(usedWidth, x);
+        }
+        if (usedWidth > 0) {
+            atlasSizes.add(new int[] { usedWidth, y + rowHeight });
+        }
+
+        // Paint each component into its cell
+        for (int a = 0; a < atlasSizes.size(); a++) {
+            int[] size = atlasSizes.get(a);
+            BufferedImage atlas = surfacePool.acquire(gc, size[0], size[1], transparency);
+            atlases.add(atlas);
+            Graphics2D gAtlas = atlas.createGraphics();
+            for (int i = 0; i < count; i++) {
+                if (cellAtlas[i] != a) {
+                    continue;
+                }
+                ComponentState state = states.get(i);
+                Rectangle area = areas[i];
+                gAtlas.setClip(cellX[i], cellY[i], area.width, area.height);
+                gAtlas.translate(cellX[i] - area.x, cellY[i] - area.y);
+                ComponentState.paintSingleBuffered(state.getComponent(), gAtlas);
+                gAtlas.translate(area.x - cellX[i], area.y - cellY[i]);
+                state.setSnapshot(atlas.getSubimage(cellX[i], cellY[i], area.width, area.height));
+            }
+            gAtlas.dispose();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chain of progressively half-sized copies of a snapshot, for effects that draw the snapshot much smaller than it
+ * is. Drawing an image with bilinear interpolation at less than half its size skips source pixels, which is slow for a
+ * large image and makes fine detail such as text shimmer while the size changes. Drawn from the nearest level that is
+ * still at least as large as the destination, the image is never reduced by more than half in one step.
+ * <p/>
+ * The levels are created on demand, each one from the level above it, so a snapshot that is never drawn at a small
+ * size costs nothing more than the snapshot itself.
+ */
+final class SnapshotMipmap {
+
+    private final Image snapshot;
+    private final int width;
+    private final int height;
+    private final GraphicsConfiguration gc;
+    private final int transparency;
+    private final SurfacePool surfacePool;
+
+    // levels.get(i) has half the size of level i, which is the snapshot for i == 0
+    private final List<BufferedImage> levels = new ArrayList<>();
+
+    /**
+     * Creates the chain for the given snapshot, without creating any level yet.
+     *
+     * @param surfacePool
+     *            the pool the levels are acquired from, or null to allocate them directly
+     */
+    SnapshotMipmap(Image snapshot, int width, int height, GraphicsConfiguration gc, int transparency,
+            SurfacePool surfacePool) {
+        this.snapshot = snapshot;
+        this.width = width;
+        this.height = height;
+        this.gc = gc;
+        this.transparency = transparency;
+        this.surfacePool = surfacePool;
+    }
+
+    /**
+     * Returns the smallest level of the chain that is at least as large as the given size in both dimensions; this is
+     * the snapshot itself unless the size is at most half of the snapshot size.
+     */
+    Image getLevel(int targetWidth, int targetHeight) {
+        int level = 0;
+        int w = width;
+        int h = height;
+        while (w / 2 >= Math.max(targetWidth, 1) && h / 2 >= Math.max(targetHeight, 1)) {
+            w /= 2;
+            h /= 2;
+            level++;
+        }
+        if (level == 0) {
+            return snapshot;
+        }
+        while (levels.size() < level) {
+            addLevel();
+        }
+        return levels.get(level - 1);
+    }
+
+    /**
+     * Releases all levels; the snapshot itself is left alone.
+     */
+    void release() {
+        for (BufferedImage level : levels) {
+            if (surfacePool != null) {
+                surfacePool.release(level);
+            } else {
+                level.flush();
+            }
+        }
+        levels.clear();
+    }
+
+    private void addLevel() {
+        Image source = levels.isEmpty() ? snapshot : levels.get(levels.size() - 1);
+        int w = (width >> levels.size()) / 2;
+        int h = (height >> levels.size()) / 2;
+        BufferedImage level = (surfacePool != null) ? surfacePool.acquire(gc, w, h, transparency)
+                : gc.createCompatibleImage(w, h, transparency);
+        Graphics2D g = level.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(source, 0, 0, w, h, null);
+        g.dispose();
+        levels.add(level);
+    }
+}
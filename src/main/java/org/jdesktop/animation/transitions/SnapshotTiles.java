@@ -0,0 +1,188 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+
+/**
+ * The snapshot of a large component, split into square tiles of {@value #TILE_SIZE} pixels that are only rendered when
+ * they are first drawn. Effects that draw the component scaled to a small size, or of which only a part is in the
+ * current clip, then only pay for the tiles they actually show. The tiles cover the snapshot area of the
+ * <code>ComponentState</code> (see {@link ComponentState#getSnapshotArea()}), in the coordinates of the component.
+ * <p/>
+ * A tile can only be rendered while the component is laid out as it was in its state, so the tiles of a start state
+ * are all rendered at once by {@link #fillAll()}, before the application sets up the next screen.
+ */
+final class SnapshotTiles {
+
+    /** The width and height of the tiles, in pixels. */
+    static final int TILE_SIZE = 256;
+
+    private final JComponent component;
+    private final Rectangle area;
+    private final SurfacePool surfacePool;
+    private final int transparency;
+    private final int columns;
+    private final int rows;
+
+    // The tiles in row-major order; null until a tile is rendered
+    private final BufferedImage[] tiles;
+
+    // Scratch rectangle for the clip bounds, reused on every frame
+    private final Rectangle clipBounds = new Rectangle();
+
+    /**
+     * Creates the tiles for the given area of the component, none of which is rendered yet.
+     *
+     * @param surfacePool
+     *            the pool the tiles are acquired from, or null to allocate them directly
+     */
+    SnapshotTiles(JComponent component, Rectangle area, SurfacePool surfacePool) {
+        this.component = component;
+        this.area = new Rectangle(area);
+        this.surfacePool = surfacePool;
+        transparency = component.isOpaque() ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+        columns = (area.width + TILE_SIZE - 1) / TILE_SIZE;
+        rows = (area.height + TILE_SIZE - 1) / TILE_SIZE;
+        tiles = new BufferedImage[columns * rows];
+    }
+
+    /**
+     * Renders all tiles that have not been rendered yet.
+     */
+    void fillAll() {
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                getTile(column, row);
+            }
+        }
+    }
+
+    /**
+     * Draws the tiles that intersect the clip of <code>g2d</code>, with the component scaled by the given factors. The
+     * edges of the tiles are rounded to whole pixels in the same way on both sides, so that no seams appear between
+     * them.
+     */
+    void paint(Graphics2D g2d, double scaleX, double scaleY) {
+        // The rectangle is left as it is if there is no clip
+        clipBounds.setBounds(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        g2d.getClipBounds(clipBounds);
+        for (int row = 0; row < rows; row++) {
+            int y1 = scale(area.y + row * TILE_SIZE, scaleY);
+            int y2 = scale(Math.min(area.y + (row + 1) * TILE_SIZE, area.y + area.height), scaleY);
+            if (y2 <= clipBounds.y || y1 >= clipBounds.y + clipBounds.height) {
+                continue;
+            }
+            for (int column = 0; column < columns; column++) {
+                int x1 = scale(area.x + column * TILE_SIZE, scaleX);
+                int x2 = scale(Math.min(area.x + (column + 1) * TILE_SIZE, area.x + area.width), scaleX);
+                if (x2 <= clipBounds.x || x1 >= clipBounds.x + clipBounds.width || x1 == x2 || y1 == y2) {
+                    continue;
+                }
+                g2d.drawImage(getTile(column, row), x1, y1, x2 - x1, y2 - y1, null);
+            }
+        }
+    }
+
+    /**
+     * Renders all tiles into a single image of the size of the area, for effects that need the snapshot as one image.
+     */
+    BufferedImage toImage() {
+        BufferedImage image = acquire(area.width, area.height);
+        Graphics2D g = image.createGraphics();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                g.drawImage(getTile(column, row), column * TILE_SIZE, row * TILE_SIZE, null);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Releases the rendered tiles.
+     */
+    void release() {
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                if (surfacePool != null) {
+                    surfacePool.release(tiles[i]);
+                } else {
+                    tiles[i].flush();
+                }
+                tiles[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the given tile, rendering it first if needed.
+     */
+    private BufferedImage getTile(int column, int row) {
+        int index = row * columns + column;
+        BufferedImage tile = tiles[index];
+        if (tile == null) {
+            int x = column * TILE_SIZE;
+            int y = row * TILE_SIZE;
+            int w = Math.min(TILE_SIZE, area.width - x);
+            int h = Math.min(TILE_SIZE, area.height - y);
+            tile = acquire(w, h);
+            Graphics2D g = tile.createGraphics();
+            g.clipRect(0, 0, w, h);
+            g.translate(-(area.x + x), -(area.y + y));
+            ComponentState.paintSingleBuffered(component, g);
+            g.dispose();
+            tiles[index] = tile;
+        }
+        return tile;
+    }
+
+    private BufferedImage acquire(int width, int height) {
+        GraphicsConfiguration gc = ComponentState.getGraphicsConfiguration(component);
+        if (surfacePool != null) {
+            return surfacePool.acquire(gc, width, height, transparency);
+        }
+        return gc.createCompatibleImage(width, height, transparency);
+    }
+
+    private static int scale(int coordinate, double factor) {
+        return (int) Math.round(coordinate * factor);
+    }
+}
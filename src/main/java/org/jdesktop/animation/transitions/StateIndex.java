@@ -0,0 +1,311 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * This class is a spatial index over the <code>AnimationState</code>s of a transition. It is a uniform grid laid over
+ * the transition container; every state is entered in the cells covered by the union of its start and end bounds, so
+ * that the states intersecting a given rectangle are found by looking at the few cells under that rectangle instead of
+ * testing every state.
+ * <p/>
+ * The index is built once per transition, in <code>AnimationManager.init()</code>, where it is used to cull the states
+ * outside the visible area of the container. It then answers the overlap queries of the incremental frames. Effects
+ * may leave the bounds they were indexed with (a rotating component, for example), so the bounds of a state grow to
+ * include its footprint whenever that happens.
+ * <p/>
+ * Queries do not return collections; they mark the matching states, which are then looked up by their position in the
+ * index through {@link #isMarked(int)}. The position of a state is the order in which it was added to the index.
+ */
+class StateIndex {
+
+    /** The smallest size of a grid cell, in pixels. */
+    private static final int MIN_CELL_SIZE = 32;
+
+    private AnimationState[] states = new AnimationState[0];
+    private Rectangle[] bounds = new Rectangle[0];
+    private boolean[] marked = new boolean[0];
+    private int count;
+
+    // The grid: the area covered by the cells, the size of the (square)
+    // cells, and for each cell the positions of the states entered in it
+    private final Rectangle extent = new Rectangle();
+    private int cellSize = MIN_CELL_SIZE;
+    private int columns;
+    private int rows;
+    private int[][] cells = new int[0][];
+    private int[] cellCounts = new int[0];
+
+    /**
+     * Builds the index for the given states, replacing any previous content. The size of the grid cells is chosen so
+     * that the grid has about as many cells as there are states.
+     *
+     * @param newStates
+     *            the states to index, in the order that defines their positions
+     * @param area
+     *            the area of the transition container, in container coordinates; states outside of it are still
+     *            indexed correctly, but are all entered in the border cells
+     */
+    void build(Collection<AnimationState> newStates, Rectangle area) {
+        clear();
+        int size = newStates.size();
+        if (states.length < size) {
+            int oldLength = states.length;
+            states = Arrays.copyOf(states, size);
+            bounds = Arrays.copyOf(bounds, size);
+            marked = new boolean[size];
+            for (int i = oldLength; i < size; i++) {
+                bounds[i] = new Rectangle();
+            }
+        }
+        for (AnimationState state : newStates) {
+            states[count] = state;
+            state.getBounds(bounds[count]);
+            count++;
+        }
+
+        extent.setBounds(area);
+        double cellArea = (double) Math.max(1, area.width) * Math.max(1, area.height) / Math.max(1, count);
+        cellSize = Math.max(MIN_CELL_SIZE, (int) Math.ceil(Math.sqrt(cellArea)));
+        columns = Math.max(1, (area.width + cellSize - 1) / cellSize);
+        rows = Math.max(1, (area.height + cellSize - 1) / cellSize);
+        if (cells.length < columns * rows) {
+            cells = new int[columns * rows][];
+            cellCounts = new int[columns * rows];
+        }
+        fillCells();
+    }
+
+    /**
+     * Returns the number of states in the index.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Returns the state at the given position.
+     */
+    AnimationState get(int index) {
+        return states[index];
+    }
+
+    /**
+     * Marks all states whose indexed bounds, the union of their start and end bounds, intersect <code>r</code>.
+     */
+    void markBounds(Rectangle r) {
+        mark(r, false);
+    }
+
+    /**
+     * Marks all states whose footprint in the current frame intersects <code>r</code>. This requires the footprints of
+     * all states to have been passed to {@link #update(int, Rectangle)} for the current frame.
+     */
+    void markFootprints(Rectangle r) {
+        mark(r, true);
+    }
+
+    boolean isMarked(int index) {
+        return marked[index];
+    }
+
+    void clearMarks() {
+        Arrays.fill(marked, 0, count, false);
+    }
+
+    /**
+     * Returns whether the footprint of the state at the given position is completely inside the opaque area of a state
+     * that is painted after it, so that the state does not need to be painted in the current frame. This requires the
+     * footprints of all states to have been passed to {@link #update(int, Rectangle)} for the current frame.
+     * <p/>
+     * A covering state must contain the top left corner of the footprint, so only the states entered in the cell of
+     * that corner need to be looked at.
+     */
+    boolean isCovered(int index) {
+        Rectangle footprint = states[index].getFootprint();
+        if (footprint == null || footprint.isEmpty()) {
+            return false;
+        }
+        int cell = row(footprint.y) * columns + column(footprint.x);
+        int[] entries = cells[cell];
+        for (int i = 0, n = cellCounts[cell]; i < n; i++) {
+            int other = entries[i];
+            if (other > index) {
+                Rectangle opaqueArea = states[other].getOpaqueArea();
+                if (opaqueArea != null && opaqueArea.contains(footprint)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all states that are not marked from the index, and clears the marks of the others. The remaining states
+     * keep their relative order.
+     */
+    void retainMarked() {
+        int retained = 0;
+        for (int i = 0; i < count; i++) {
+            if (marked[i]) {
+                states[retained] = states[i];
+                Rectangle r = bounds[retained];
+                bounds[retained] = bounds[i];
+                bounds[i] = r;
+                retained++;
+            }
+        }
+        Arrays.fill(states, retained, count, null);
+        Arrays.fill(marked, 0, count, false);
+        count = retained;
+        fillCells();
+    }
+
+    /**
+     * Grows the indexed bounds of the state at the given position to contain <code>footprint</code>. This is cheap
+     * when the footprint is inside the bounds already, which is the common case.
+     */
+    void update(int index, Rectangle footprint) {
+        Rectangle r = bounds[index];
+        if (footprint == null || footprint.isEmpty() || r.contains(footprint)) {
+            return;
+        }
+        removeFromCells(index);
+        AnimationManager.addToRegion(r, footprint);
+        addToCells(index);
+    }
+
+    /**
+     * Empties the index, releasing the states.
+     */
+    void clear() {
+        Arrays.fill(states, 0, count, null);
+        Arrays.fill(marked, 0, count, false);
+        count = 0;
+    }
+
+    private void mark(Rectangle r, boolean footprints) {
+        if (r.isEmpty()) {
+            return;
+        }
+        int column2 = column(r.x + r.width - 1);
+        int row2 = row(r.y + r.height - 1);
+        for (int row = row(r.y); row <= row2; row++) {
+            for (int column = column(r.x); column <= column2; column++) {
+                int cell = row * columns + column;
+                int[] entries = cells[cell];
+                for (int i = 0, n = cellCounts[cell]; i < n; i++) {
+                    int index = entries[i];
+                    if (!marked[index]
+                        && (footprints ? states[index].intersects(r) : bounds[index].intersects(r))) {
+                        marked[index] = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private void fillCells() {
+        Arrays.fill(cellCounts, 0, columns * rows, 0);
+        for (int i = 0; i < count; i++) {
+            addToCells(i);
+        }
+    }
+
+    private void addToCells(int index) {
+        Rectangle r = bounds[index];
+        if (r.isEmpty()) {
+            return;
+        }
+        int column2 = column(r.x + r.width - 1);
+        int row2 = row(r.y + r.height - 1);
+        for (int row = row(r.y); row <= row2; row++) {
+            for (int column = column(r.x); column <= column2; column++) {
+                int cell = row * columns + column;
+                int[] entries = cells[cell];
+                if (entries == null) {
+                    entries = cells[cell] = new int[4];
+                } else if (cellCounts[cell] == entries.length) {
+                    entries = cells[cell] = Arrays.copyOf(entries, entries.length * 2);
+                }
+                entries[cellCounts[cell]++] = index;
+            }
+        }
+    }
+
+    private void removeFromCells(int index) {
+        Rectangle r = bounds[index];
+        if (r.isEmpty()) {
+            return;
+        }
+        int column2 = column(r.x + r.width - 1);
+        int row2 = row(r.y + r.height - 1);
+        for (int row = row(r.y); row <= row2; row++) {
+            for (int column = column(r.x); column <= column2; column++) {
+                int cell = row * columns + column;
+                int[] entries = cells[cell];
+                for (int i = 0, n = cellCounts[cell]; i < n; i++) {
+                    if (entries[i] == index) {
+                        entries[i] = entries[n - 1];
+                        cellCounts[cell]--;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the grid column that contains the given x coordinate, clamped to the grid.
+     */
+    private int column(int x) {
+        if (x < extent.x) {
+            return 0;
+        }
+        return Math.min(columns - 1, (x - extent.x) / cellSize);
+    }
+
+    /**
+     * Returns the grid row that contains the given y coordinate, clamped to the grid.
+     */
+    private int row(int y) {
+        if (y < extent.y) {
+            return 0;
+        }
+        return Math.min(rows - 1, (y - extent.y) / cellSize);
+    }
+}
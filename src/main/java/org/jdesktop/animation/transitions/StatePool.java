@@ -0,0 +1,232 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.swing.JComponent;
+
+import org.jdesktop.animation.transitions.effects.CompositeEffect;
+import org.jdesktop.animation.transitions.effects.FadeIn;
+import org.jdesktop.animation.transitions.effects.FadeOut;
+import org.jdesktop.animation.transitions.effects.Move;
+import org.jdesktop.animation.transitions.effects.Scale;
+import org.jdesktop.animation.transitions.effects.Unchanging;
+
+/**
+ * This class recycles the objects that describe a transition: <code>ComponentState</code>s,
+ * <code>AnimationState</code>s, the default effects created for them and the adapters that run
+ * {@link StatelessEffect}s. A pool belongs to one
+ * <code>AnimationManager</code>, so the objects of one transition are reused by the next transition of the same
+ * <code>ScreenTransition</code>. The pool only grows up to the number of objects that a single transition needed.
+ * <p/>
+ * Custom effects are never pooled, as they belong to the application; of a stateless effect, which is shared, only
+ * the adapters are pooled. Snapshot images are not pooled here either;
+ * the component states take them from the {@link SurfacePool} of the transition and give them back when they are
+ * recycled.
+ */
+class StatePool {
+
+    private final Deque<ComponentState> componentStates = new ArrayDeque<>();
+    private final Deque<AnimationState> animationStates = new ArrayDeque<>();
+
+    // The default effects, by class. The composite effects in here are all
+    // the move-and-scale combination created by moveAndScale().
+    private final Map<Class<?>, Deque<Effect>> effects = new HashMap<>();
+
+    private final SurfacePool surfacePool;
+
+    /**
+     * The render state of the stateless effects of this pool's transitions. The frames of a transition are prepared
+     * one effect at a time, so its adapters can share one; other transitions have their own.
+     */
+    private final RenderState renderState = new RenderState();
+
+    private boolean mipmapped;
+
+    StatePool(SurfacePool surfacePool) {
+        this.surfacePool = surfacePool;
+    }
+
+    /**
+     * Sets whether the component states handed out from now on keep smaller copies of their snapshots.
+     */
+    void setMipmapped(boolean mipmapped) {
+        this.mipmapped = mipmapped;
+    }
+
+    /**
+     * Returns a state recording the current location and size of the given component, without a snapshot.
+     */
+    ComponentState componentState(JComponent component) {
+        ComponentState state = componentStates.poll();
+        if (state == null) {
+            state = new ComponentState(component, false);
+            state.setSurfacePool(surfacePool);
+        } else {
+            state.reset(component);
+        }
+        state.setMipmapped(mipmapped);
+        return state;
+    }
+
+    /**
+     * Returns an AnimationState with the given start or end state.
+     */
+    AnimationState animationState(ComponentState state, boolean isStart) {
+        AnimationState animationState = animationStates.poll();
+        if (animationState == null) {
+            return new AnimationState(state, isStart);
+        }
+        animationState.reset(state, isStart);
+        return animationState;
+    }
+
+    Effect fadeIn(ComponentState end) {
+        Effect effect = poll(FadeIn.class);
+        if (effect == null) {
+            return new FadeIn(end);
+        }
+        effect.setEnd(end);
+        return effect;
+    }
+
+    Effect fadeOut(ComponentState start) {
+        Effect effect = poll(FadeOut.class);
+        if (effect == null) {
+            return new FadeOut(start);
+        }
+        effect.setStart(start);
+        return effect;
+    }
+
+    Effect move(ComponentState start, ComponentState end) {
+        Effect effect = poll(Move.class);
+        if (effect == null) {
+            return new Move(start, end);
+        }
+        effect.setComponentStates(start, end);
+        return effect;
+    }
+
+    Effect scale(ComponentState start, ComponentState end) {
+        Effect effect = poll(Scale.class);
+        if (effect == null) {
+            return new Scale(start, end);
+        }
+        effect.setComponentStates(start, end);
+        return effect;
+    }
+
+    Effect moveAndScale(ComponentState start, ComponentState end) {
+        Effect effect = poll(CompositeEffect.class);
+        if (effect == null) {
+            CompositeEffect composite = new CompositeEffect(new Move(start, end));
+            composite.addEffect(new Scale(start, end));
+            return composite;
+        }
+        // The composite passes the states on to its sub-effects
+        effect.setStart(start);
+        effect.setEnd(end);
+        return effect;
+    }
+
+    /**
+     * Returns an adapter that runs the given stateless effect for one component, without start and end states.
+     */
+    Effect stateless(StatelessEffect statelessEffect) {
+        StatelessEffectAdapter adapter = (StatelessEffectAdapter) poll(StatelessEffectAdapter.class);
+        if (adapter == null) {
+            return new StatelessEffectAdapter(statelessEffect, renderState);
+        }
+        adapter.setStatelessEffect(statelessEffect);
+        return adapter;
+    }
+
+    /**
+     * Returns whether the given effect came from this pool although it is not a default effect: whether it is an
+     * adapter created by {@link #stateless(StatelessEffect)}.
+     */
+    boolean isPooled(Effect effect) {
+        return effect instanceof StatelessEffectAdapter
+               && ((StatelessEffectAdapter) effect).getRenderState() == renderState;
+    }
+
+    Effect unchanging(ComponentState start, ComponentState end) {
+        Effect effect = poll(Unchanging.class);
+        if (effect == null) {
+            return new Unchanging(start, end);
+        }
+        effect.setComponentStates(start, end);
+        return effect;
+    }
+
+    /**
+     * Takes back the given AnimationState, along with its component states and its effect if that came from this pool.
+     * The AnimationState must have been cleaned up already and must not be used anymore.
+     */
+    void recycle(AnimationState state) {
+        recycle(state.getStart());
+        recycle(state.getEnd());
+        Effect effect = state.getPooledEffect();
+        if (effect != null) {
+            Deque<Effect> pooled = effects.get(effect.getClass());
+            if (pooled == null) {
+                pooled = new ArrayDeque<>();
+                effects.put(effect.getClass(), pooled);
+            }
+            pooled.add(effect);
+        }
+        state.reset(null, false);
+        animationStates.add(state);
+    }
+
+    /**
+     * Takes back the given component state, which must not be used anymore.
+     */
+    void recycle(ComponentState state) {
+        if (state != null) {
+            state.reset(null);
+            componentStates.add(state);
+        }
+    }
+
+    private Effect poll(Class<? extends Effect> effectClass) {
+        Deque<Effect> pooled = effects.get(effectClass);
+        return pooled == null ? null : pooled.poll();
+    }
+}
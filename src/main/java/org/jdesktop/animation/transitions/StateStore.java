@@ -0,0 +1,154 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.swing.JComponent;
+
+/**
+ * This class holds the <code>AnimationState</code>s of a transition, keyed by the identity of their components. The
+ * states are kept in an array in the order in which they were added, which is the order in which they are painted;
+ * {@link AnimationManager} adds them from the bottom of the container's z-order to the top.
+ * <p/>
+ * Removing a state only clears its slot in the array, so it takes constant time; the gaps are closed, keeping the
+ * order of the remaining states, the next time the states are iterated.
+ */
+class StateStore extends AbstractCollection<AnimationState> {
+
+    private final Map<JComponent, AnimationState> statesByComponent = new IdentityHashMap<>();
+
+    private AnimationState[] slots = new AnimationState[16];
+    private int slotCount;
+
+    /**
+     * Returns the state of the given component, or <code>null</code> if there is none.
+     */
+    AnimationState get(JComponent component) {
+        return statesByComponent.get(component);
+    }
+
+    /**
+     * Adds a state after all existing states, replacing the state of the same component if there is one.
+     */
+    @Override
+    public boolean add(AnimationState state) {
+        AnimationState previous = statesByComponent.put(state.getComponent(), state);
+        if (previous != null) {
+            slots[previous.storeSlot] = null;
+        }
+        if (slotCount == slots.length) {
+            compact();
+            if (slotCount == slots.length) {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+        }
+        state.storeSlot = slotCount;
+        slots[slotCount++] = state;
+        return true;
+    }
+
+    /**
+     * Removes the state of the given component, if any.
+     */
+    void removeComponent(JComponent component) {
+        AnimationState state = statesByComponent.remove(component);
+        if (state != null) {
+            slots[state.storeSlot] = null;
+        }
+    }
+
+    @Override
+    public int size() {
+        return statesByComponent.size();
+    }
+
+    @Override
+    public void clear() {
+        statesByComponent.clear();
+        Arrays.fill(slots, 0, slotCount, null);
+        slotCount = 0;
+    }
+
+    @Override
+    public Iterator<AnimationState> iterator() {
+        compact();
+        return new Iterator<AnimationState>() {
+
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < slotCount;
+            }
+
+            @Override
+            public AnimationState next() {
+                if (next >= slotCount) {
+                    throw new NoSuchElementException();
+                }
+                return slots[next++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Closes the gaps left by removed states.
+     */
+    private void compact() {
+        if (slotCount == statesByComponent.size()) {
+            return;
+        }
+        int count = 0;
+        for (int i = 0; i < slotCount; i++) {
+            AnimationState state = slots[i];
+            if (state != null) {
+                state.storeSlot = count;
+                slots[count++] = state;
+            }
+        }
+        Arrays.fill(slots, count, slotCount, null);
+        slotCount = count;
+    }
+}
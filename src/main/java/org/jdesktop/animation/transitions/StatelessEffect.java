@@ -0,0 +1,69 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+package org.jdesktop.animation.transitions;
+
+/**
+ * An alternative to {@link Effect} for effects that are a pure function of the progress of the transition. Where an
+ * Effect is an object per component whose fields are animated during the transition, a stateless effect computes
+ * each frame from the elapsed fraction and the start and end states of the component alone. It holds no state of its
+ * own, so a single instance can animate any number of components, in any number of transitions at once.
+ * <p>
+ * Stateless effects are used through the factory returned by {@link EffectsManager#statelessFactory(StatelessEffect)},
+ * for example:
+ *
+ * <pre>
+ * effectsManager.setClassEffect(JButton.class, EffectsManager.statelessFactory(FlyweightEffects.FADE_IN),
+ *         TransitionType.APPEARING);
+ * </pre>
+ *
+ * The component is always drawn from its snapshot image.
+ *
+ * @see org.jdesktop.animation.transitions.effects.FlyweightEffects
+ */
+public interface StatelessEffect {
+
+    /**
+     * Computes the current frame of the given component.
+     *
+     * @param fraction
+     *            the elapsed fraction of the transition, from 0 to 1
+     * @param start
+     *            the state of the component at the start of the transition, or null if it is appearing
+     * @param end
+     *            the state of the component at the end of the transition, or null if it is disappearing
+     * @param state
+     *            receives the result. On entry it describes the component at its start state, or at its end state if
+     *            there is no start state, opaque and not rotated.
+     */
+    void computeFrame(double fraction, ComponentState start, ComponentState end, RenderState state);
+}
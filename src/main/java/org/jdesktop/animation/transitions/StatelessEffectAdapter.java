@@ -0,0 +1,106 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+package org.jdesktop.animation.transitions;
+
+import java.awt.Graphics2D;
+
+import org.jdesktop.core.animation.timing.Animator;
+
+/**
+ * This class runs a {@link StatelessEffect} for one component. It holds what the frame loop of an {@link Effect} needs
+ * to know about the component from one frame to the next, such as the area it covered. The adapters of a transition
+ * are taken from its {@link StatePool} and recycled with the other objects of the transition, so that they are only
+ * created by the first transitions of a <code>ScreenTransition</code>. The effect itself is shared by all components,
+ * and the {@link RenderState} it computes the frames into by all components of a transition.
+ */
+class StatelessEffectAdapter extends Effect {
+
+    /** The render state shared by the adapters of one transition, whose frames are prepared one effect at a time. */
+    private final RenderState renderState;
+
+    private StatelessEffect effect;
+
+    // The batch of the running transition, which knows its elapsed fraction
+    private ChannelBatch batch;
+
+    StatelessEffectAdapter(StatelessEffect effect, RenderState renderState) {
+        this.effect = effect;
+        this.renderState = renderState;
+    }
+
+    /**
+     * Sets the stateless effect that this adapter runs, for an adapter that is reused by another transition.
+     */
+    void setStatelessEffect(StatelessEffect effect) {
+        this.effect = effect;
+    }
+
+    RenderState getRenderState() {
+        return renderState;
+    }
+
+    @Override
+    public void init(Animator animator, Effect parentEffect) {
+        super.init(animator, parentEffect);
+        batch = getChannelBatch();
+        // The location is applied by setup() on every frame
+        setLocation(0, 0);
+    }
+
+    @Override
+    public void cleanup(Animator animator) {
+        batch = null;
+    }
+
+    /**
+     * Computes the current frame through the stateless effect and sets up the Graphics2D accordingly.
+     */
+    @Override
+    public void setup(Graphics2D g2d) {
+        ComponentState start = getStart();
+        ComponentState end = getEnd();
+        renderState.reset(start != null ? start : end);
+        effect.computeFrame(batch == null ? 0 : batch.getFraction(), start, end, renderState);
+
+        setWidth((int) Math.round(renderState.getWidth()));
+        setHeight((int) Math.round(renderState.getHeight()));
+        translate(g2d, Math.round(renderState.getX()), Math.round(renderState.getY()));
+        if (renderState.getRotation() != 0) {
+            rotate(g2d, renderState.getRotation(), renderState.getRotationX(), renderState.getRotationY());
+        }
+        if (renderState.getOpacity() < 1f) {
+            g2d.setComposite(getAlphaComposite(renderState.getOpacity()));
+        }
+        super.setup(g2d);
+    }
+}
@@ -0,0 +1,78 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * A source of the offscreen images used by transitions: the component snapshots, the background of the transition
+ * container and the image that the frames are composed into. Transitions acquire their images from a pool and release
+ * them when they are done, so that a pool can hand the same buffers to the next transition instead of allocating new
+ * ones every time.
+ * <p/>
+ * The default pool is an {@link LruSurfacePool}, which is shared by all transitions; see
+ * {@link ScreenTransition#setDefaultSurfacePool(SurfacePool)} and
+ * {@link ScreenTransition.Builder#setSurfacePool(SurfacePool)}. Implementations must be thread-safe, as transitions
+ * may run on different threads.
+ */
+public interface SurfacePool {
+
+    /**
+     * Returns an image of exactly the given size, compatible with the given configuration. Images with
+     * {@link Transparency#TRANSLUCENT} are fully transparent; the content of opaque images is undefined, so the caller
+     * must paint every pixel.
+     *
+     * @param gc
+     *            the configuration of the screen that the image will be drawn to
+     * @param width
+     *            the width of the image, which must be positive
+     * @param height
+     *            the height of the image, which must be positive
+     * @param transparency
+     *            one of the constants of {@link Transparency}
+     * @return the image, which belongs to the caller until it is passed to {@link #release(BufferedImage)}
+     */
+    BufferedImage acquire(GraphicsConfiguration gc, int width, int height, int transparency);
+
+    /**
+     * Takes back an image returned by {@link #acquire(GraphicsConfiguration, int, int, int)}. The caller must not use
+     * the image, or any image derived from it, anymore. Images that were not acquired from this pool are ignored.
+     *
+     * @param image
+     *            the image to release
+     */
+    void release(BufferedImage image);
+}
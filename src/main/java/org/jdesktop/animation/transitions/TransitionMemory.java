@@ -0,0 +1,276 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class accounts for the memory taken by the offscreen images of all transitions in the application, and keeps it
+ * within a configurable budget. Each <code>ScreenTransition</code> holds a transition image and a background image as
+ * large as its container, plus the snapshots of the components during a transition; images that are released are kept
+ * by their {@link SurfacePool} for reuse.
+ * <p/>
+ * Whenever a transition acquires an image and the total exceeds the budget, images are evicted explicitly, in this
+ * order, until the total is within the budget again:
+ * <ol>
+ * <li>the released images kept by {@link LruSurfacePool}s, least recently released first</li>
+ * <li>the buffers of the transitions that are not running, least recently run first; such a transition acquires new
+ * buffers when it starts again</li>
+ * </ol>
+ * The images of running transitions are never evicted, so the budget may be exceeded while they run. The budget is
+ * unlimited by default.
+ */
+public final class TransitionMemory {
+
+    // The accounts of the live transitions
+    private static final List<WeakReference<MemoryAccount>> accounts = new ArrayList<>();
+
+    private static volatile long budget = Long.MAX_VALUE;
+
+    private TransitionMemory() {
+    }
+
+    /**
+     * Sets the number of bytes that the images of all transitions may take, and evicts images if they take more. This
+     * may be called from any thread; the buffers of idle transitions are always released on the EDT, so when called
+     * from another thread they are evicted shortly after this method returns.
+     *
+     * @param bytes
+     *            the budget in bytes; {@link Long#MAX_VALUE} for no limit
+     * @throws IllegalArgumentException
+     *             if bytes is negative
+     */
+    public static void setBudget(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The budget must not be negative");
+        }
+        budget = bytes;
+        enforceBudget(null);
+    }
+
+    /**
+     * Returns the number of bytes that the images of all transitions may take.
+     */
+    public static long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the number of bytes taken by all images of all transitions: the snapshots and buffers in use, and the
+     * released images kept for reuse.
+     */
+    public static long getTotalBytes() {
+        List<MemoryAccount> live = getAccounts();
+        return getSnapshotBytes(live) + getBufferBytes(live) + getPooledBytes(getPools(live));
+    }
+
+    /**
+     * Returns the number of bytes taken by the component snapshots of the running transitions.
+     */
+    public static long getSnapshotBytes() {
+        return getSnapshotBytes(getAccounts());
+    }
+
+    /**
+     * Returns the number of bytes taken by the transition and background images of all transitions.
+     */
+    public static long getBufferBytes() {
+        return getBufferBytes(getAccounts());
+    }
+
+    /**
+     * Returns the number of bytes taken by the released images that the {@link LruSurfacePool}s of the transitions keep
+     * for reuse.
+     */
+    public static long getPooledBytes() {
+        return getPooledBytes(getPools(getAccounts()));
+    }
+
+    /**
+     * Returns the number of transitions that are accounted for.
+     */
+    public static int getTransitionCount() {
+        return getAccounts().size();
+    }
+
+    /**
+     * Evicts all images that are not in use by a running transition: the released images kept for reuse and the
+     * buffers of the idle transitions. Like {@link #setBudget(long)}, this may be called from any thread.
+     */
+    public static void trim() {
+        evict(null, Long.MAX_VALUE);
+    }
+
+    /**
+     * Returns the approximate number of bytes taken by the given image.
+     */
+    static long getByteSize(BufferedImage image) {
+        int bytesPerPixel = (image.getColorModel().getPixelSize() + 7) / 8;
+        return (long) image.getWidth() * image.getHeight() * bytesPerPixel;
+    }
+
+    static void register(MemoryAccount account) {
+        synchronized (accounts) {
+            accounts.add(new WeakReference<>(account));
+        }
+    }
+
+    /**
+     * Evicts images if the total exceeds the budget. The buffers of <code>requester</code>, which is acquiring an
+     * image, are left alone.
+     */
+    static void enforceBudget(MemoryAccount requester) {
+        long limit = budget;
+        if (limit == Long.MAX_VALUE) {
+            return;
+        }
+        long excess = getTotalBytes() - limit;
+        if (excess > 0) {
+            evict(requester, excess);
+        }
+    }
+
+    private static void evict(MemoryAccount requester, long excess) {
+        List<MemoryAccount> live = getAccounts();
+        List<LruSurfacePool> pools = getPools(live);
+        excess = trimPools(pools, excess);
+        if (excess <= 0) {
+            return;
+        }
+
+        // Release the buffers of idle transitions into their pools, and
+        // evict them from there
+        List<MemoryAccount> idle = new ArrayList<>();
+        for (MemoryAccount account : live) {
+            if (account != requester && !account.isActive() && account.getBufferBytes() > 0) {
+                idle.add(account);
+            }
+        }
+        Collections.sort(idle, new Comparator<MemoryAccount>() {
+
+            @Override
+            public int compare(MemoryAccount a1, MemoryAccount a2) {
+                return Long.compare(a1.getLastUsed(), a2.getLastUsed());
+            }
+        });
+        long released = 0;
+        for (MemoryAccount account : idle) {
+            if (released >= excess) {
+                break;
+            }
+            // Off the EDT the release is only posted, so count the buffers as
+            // released already; the account enforces the budget again once
+            // they are in the pool
+            released += account.getBufferBytes();
+            account.releaseBuffers();
+        }
+        trimPools(pools, excess);
+    }
+
+    /**
+     * Evicts released images from the given pools until <code>excess</code> bytes are freed or the pools are empty.
+     * Returns the number of bytes that remain to be freed.
+     */
+    private static long trimPools(List<LruSurfacePool> pools, long excess) {
+        for (LruSurfacePool pool : pools) {
+            if (excess <= 0) {
+                break;
+            }
+            long pooled = pool.getPooledBytes();
+            pool.trimTo(pooled - excess);
+            excess -= pooled - pool.getPooledBytes();
+        }
+        return excess;
+    }
+
+    private static List<MemoryAccount> getAccounts() {
+        List<MemoryAccount> live = new ArrayList<>();
+        synchronized (accounts) {
+            for (Iterator<WeakReference<MemoryAccount>> it = accounts.iterator(); it.hasNext();) {
+                MemoryAccount account = it.next().get();
+                if (account == null) {
+                    it.remove();
+                } else {
+                    live.add(account);
+                }
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Returns the distinct LruSurfacePools used by the given accounts.
+     */
+    private static List<LruSurfacePool> getPools(List<MemoryAccount> live) {
+        Map<LruSurfacePool, Boolean> pools = new IdentityHashMap<>();
+        for (MemoryAccount account : live) {
+            if (account.getSurfacePool() instanceof LruSurfacePool) {
+                pools.put((LruSurfacePool) account.getSurfacePool(), Boolean.TRUE);
+            }
+        }
+        return new ArrayList<>(pools.keySet());
+    }
+
+    private static long getSnapshotBytes(List<MemoryAccount> live) {
+        long bytes = 0;
+        for (MemoryAccount account : live) {
+            bytes += account.getSnapshotBytes();
+        }
+        return bytes;
+    }
+
+    private static long getBufferBytes(List<MemoryAccount> live) {
+        long bytes = 0;
+        for (MemoryAccount account : live) {
+            bytes += account.getBufferBytes();
+        }
+        return bytes;
+    }
+
+    private static long getPooledBytes(List<LruSurfacePool> pools) {
+        long bytes = 0;
+        for (LruSurfacePool pool : pools) {
+            bytes += pool.getPooledBytes();
+        }
+        return bytes;
+    }
+}
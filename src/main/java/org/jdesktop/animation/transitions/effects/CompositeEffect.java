@@ -71,6 +71,16 @@ public class CompositeEffect extends Effect {
         addEffect(effect);
     }
 
+    /**
+     * Creates a copy of the given CompositeEffect, with copies of all of its sub-effects; see {@link #createCopy()}.
+     */
+    protected CompositeEffect(CompositeEffect prototype) {
+        super(prototype);
+        for (Effect effect : prototype.effects) {
+            effects.add(effect.createCopy());
+        }
+    }
+
     /**
      * Adds an additional effect to this CompositeEffect. This effect is added to the end of the existing list of
      * effects, and will be processed after the other effects have been processed.
@@ -106,6 +116,7 @@ public class CompositeEffect extends Effect {
     public void init(Animator animator, Effect parentEffect) {
         for (Effect effect : effects) {
             effect.init(animator, this);
+            setParentRendersComponent(effect, getRenderComponent());
         }
         super.init(animator, null);
     }
@@ -131,6 +142,46 @@ public class CompositeEffect extends Effect {
         super.setEnd(end);
     }
 
+    /**
+     * Creates a copy of this CompositeEffect with copies of all sub-effects. The copy is a plain CompositeEffect;
+     * subclasses must override this method and create their copy through {@link #CompositeEffect(CompositeEffect)}.
+     */
+    @Override
+    public Effect createCopy() {
+        return new CompositeEffect(this);
+    }
+
+    /**
+     * A CompositeEffect tracks its transform only if all of its sub-effects do.
+     */
+    @Override
+    protected boolean tracksTransform() {
+        for (Effect effect : effects) {
+            if (!tracksTransform(effect)) {
+                return false;
+            }
+        }
+        return super.tracksTransform();
+    }
+
+    /**
+     * A CompositeEffect morphs its component only as far as all of its sub-effects that re-render the component allow;
+     * it uses the most live of their morph modes.
+     */
+    @Override
+    public MorphMode getMorphMode() {
+        MorphMode morphMode = null;
+        for (Effect effect : effects) {
+            if (effect.getRenderComponent()) {
+                MorphMode effectMode = effect.getMorphMode();
+                if (morphMode == null || effectMode.compareTo(morphMode) < 0) {
+                    morphMode = effectMode;
+                }
+            }
+        }
+        return (morphMode == null) ? super.getMorphMode() : morphMode;
+    }
+
     /**
      * This method is called during each frame of the transition animation and allows the effect to set up the Graphics
      * state according to the various sub-effects in this CompositeEffect.
@@ -140,13 +191,10 @@ public class CompositeEffect extends Effect {
         for (int i = 0; i < effects.size(); ++i) {
             Effect effect = effects.get(i);
             effect.setup(g2d);
-            // Grab the image for this effect from one of the sub-effects
-            // REMIND: This breaks down if we have a CompositeEffect
-            // composed of several non-image-based effects
-            if (!getRenderComponent() && getComponentImage() == null) {
-                setComponentImage(effect.getComponentImage());
-            }
         }
+        // The sub-effects share the component states of this effect, so the
+        // snapshot that super.setup() picks is the one they already took; if
+        // this effect re-renders the component, none of them took one
         super.setup(g2d);
     }
 
@@ -33,7 +33,6 @@
 
 package org.jdesktop.animation.transitions.effects;
 
-import java.awt.AlphaComposite;
 import java.awt.Graphics2D;
 
 import org.jdesktop.animation.transitions.Effect;
@@ -64,14 +63,13 @@ public abstract class Fade extends Effect {
     }
 
     /**
-     * This method is called prior to <code>paint()</code> during every frame of the transition animation. It sets up an
-     * <code>AlphaComposite</code> object based on the current opacity and sets that composite on the
+     * This method is called prior to <code>paint()</code> during every frame of the transition animation. It looks up
+     * the <code>AlphaComposite</code> object for the current opacity and sets that composite on the
      * <code>Graphics2D</code> object appropriately.
      */
     @Override
     public void setup(Graphics2D g2d) {
-        AlphaComposite newComposite = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity);
-        g2d.setComposite(newComposite);
+        g2d.setComposite(getAlphaComposite(opacity));
         super.setup(g2d);
     }
 }
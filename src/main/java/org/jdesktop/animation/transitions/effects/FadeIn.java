@@ -36,8 +36,6 @@ package org.jdesktop.animation.transitions.effects;
 import org.jdesktop.animation.transitions.ComponentState;
 import org.jdesktop.animation.transitions.Effect;
 import org.jdesktop.core.animation.timing.Animator;
-import org.jdesktop.core.animation.timing.PropertySetter;
-import org.jdesktop.core.animation.timing.TimingTarget;
 
 /**
  * Simple subclass of Fade effect that will fade a component from transparent to fully opaque.
@@ -46,7 +44,7 @@ import org.jdesktop.core.animation.timing.TimingTarget;
  */
 public class FadeIn extends Fade {
 
-    private TimingTarget ps;
+    private FloatChannel ps;
 
     /**
      * Initializes the effect, adding an animation target that will fade the component of the effect in from transparent
@@ -54,8 +52,15 @@ public class FadeIn extends Fade {
      */
     @Override
     public void init(Animator animator, Effect parentEffect) {
-        ps = PropertySetter.getTarget(this, "opacity", 0f, 1f);
-        animator.addTarget(ps);
+        if (ps == null) {
+            ps = new FloatChannel(0f, 1f) {
+                @Override
+                protected void set(float value) {
+                    setOpacity(value);
+                }
+            };
+        }
+        addChannel(animator, ps);
         setOpacity(0f);
         super.init(animator, null);
     }
@@ -65,7 +70,7 @@ public class FadeIn extends Fade {
      */
     @Override
     public void cleanup(Animator animator) {
-        animator.removeTarget(ps);
+        removeChannel(animator, ps);
     }
 
     public FadeIn() {
@@ -80,4 +85,14 @@ public class FadeIn extends Fade {
     public FadeIn(ComponentState end) {
         setEnd(end);
     }
+
+    /**
+     * Creates a copy of this effect; the copy creates a channel of its own in its first <code>init()</code>.
+     */
+    @Override
+    public Effect createCopy() {
+        FadeIn copy = (FadeIn) super.createCopy();
+        copy.ps = null;
+        return copy;
+    }
 }
@@ -36,8 +36,6 @@ package org.jdesktop.animation.transitions.effects;
 import org.jdesktop.animation.transitions.ComponentState;
 import org.jdesktop.animation.transitions.Effect;
 import org.jdesktop.core.animation.timing.Animator;
-import org.jdesktop.core.animation.timing.PropertySetter;
-import org.jdesktop.core.animation.timing.TimingTarget;
 
 /**
  * Simple subclass of Fade effect that will fade a component from opaque to transparent.
@@ -47,7 +45,7 @@ import org.jdesktop.core.animation.timing.TimingTarget;
 public class FadeOut extends Fade {
 
     // animation target used to fade our during the transition
-    private TimingTarget ps;
+    private FloatChannel ps;
 
     /**
      * Initializes the effect, adding an animation target that will fade the component of the effect our from opaque to
@@ -55,8 +53,15 @@ public class FadeOut extends Fade {
      */
     @Override
     public void init(Animator animator, Effect parentEffect) {
-        ps = PropertySetter.getTarget(this, "opacity", 1f, 0f);
-        animator.addTarget(ps);
+        if (ps == null) {
+            ps = new FloatChannel(1f, 0f) {
+                @Override
+                protected void set(float value) {
+                    setOpacity(value);
+                }
+            };
+        }
+        addChannel(animator, ps);
         setOpacity(1f);
         super.init(animator, null);
     }
@@ -66,7 +71,7 @@ public class FadeOut extends Fade {
      */
     @Override
     public void cleanup(Animator animator) {
-        animator.removeTarget(ps);
+        removeChannel(animator, ps);
     }
 
     public FadeOut() {
@@ -81,4 +86,14 @@ public class FadeOut extends Fade {
     public FadeOut(ComponentState start) {
         setStart(start);
     }
+
+    /**
+     * Creates a copy of this effect; the copy creates a channel of its own in its first <code>init()</code>.
+     */
+    @Override
+    public Effect createCopy() {
+        FadeOut copy = (FadeOut) super.createCopy();
+        copy.ps = null;
+        return copy;
+    }
 }
@@ -3,8 +3,6 @@ package org.jdesktop.animation.transitions.effects;
 import org.jdesktop.animation.transitions.ComponentState;
 import org.jdesktop.animation.transitions.Effect;
 import org.jdesktop.core.animation.timing.Animator;
-import org.jdesktop.core.animation.timing.PropertySetter;
-import org.jdesktop.core.animation.timing.TimingTarget;
 
 /**
  * Simple subclass of Fade effect that will fade a component from opaque to the user supplied value and back to opaque.
@@ -16,7 +14,7 @@ public class FadeOutAndBack extends Fade {
     private final Float targetOpacity;
 
     // animation target used to fade our during the transition
-    private TimingTarget ps;
+    private FloatChannel ps;
 
     /**
      * Creates a new instance of FadeOut with the given start state.
@@ -47,8 +45,15 @@ public class FadeOutAndBack extends Fade {
      */
     @Override
     public void init(Animator animator, Effect parentEffect) {
-        ps = PropertySetter.getTarget(this, "opacity", 1f, targetOpacity, targetOpacity, 1f);
-        animator.addTarget(ps);
+        if (ps == null) {
+            ps = new FloatChannel(1f, targetOpacity, targetOpacity, 1f) {
+                @Override
+                protected void set(float value) {
+                    setOpacity(value);
+                }
+            };
+        }
+        addChannel(animator, ps);
         setOpacity(1f);
         super.init(animator, null);
     }
@@ -58,7 +63,16 @@ public class FadeOutAndBack extends Fade {
      */
     @Override
     public void cleanup(Animator animator) {
-        animator.removeTarget(ps);
+        removeChannel(animator, ps);
     }
 
+    /**
+     * Creates a copy of this effect; the copy creates a channel of its own in its first <code>init()</code>.
+     */
+    @Override
+    public Effect createCopy() {
+        FadeOutAndBack copy = (FadeOutAndBack) super.createCopy();
+        copy.ps = null;
+        return copy;
+    }
 }
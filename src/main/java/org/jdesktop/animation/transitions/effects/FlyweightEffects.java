@@ -0,0 +1,91 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+package org.jdesktop.animation.transitions.effects;
+
+import org.jdesktop.animation.transitions.ComponentState;
+import org.jdesktop.animation.transitions.RenderState;
+import org.jdesktop.animation.transitions.StatelessEffect;
+
+/**
+ * Stateless versions of the default effects. Each of them is a single instance that can animate any number of
+ * components; see {@link StatelessEffect}.
+ */
+public final class FlyweightEffects {
+
+    /**
+     * Fades the component in from transparent to opaque, like {@link FadeIn}.
+     */
+    public static final StatelessEffect FADE_IN = new StatelessEffect() {
+
+        @Override
+        public void computeFrame(double fraction, ComponentState start, ComponentState end, RenderState state) {
+            state.setOpacity((float) fraction);
+        }
+    };
+
+    /**
+     * Fades the component out from opaque to transparent, like {@link FadeOut}.
+     */
+    public static final StatelessEffect FADE_OUT = new StatelessEffect() {
+
+        @Override
+        public void computeFrame(double fraction, ComponentState start, ComponentState end, RenderState state) {
+            state.setOpacity((float) (1 - fraction));
+        }
+    };
+
+    /**
+     * Moves and resizes the component from its start to its end state, like {@link Move} and {@link Scale} combined.
+     * The component is scaled from its snapshot image rather than laid out again at every size.
+     */
+    public static final StatelessEffect MOVE_AND_SCALE = new StatelessEffect() {
+
+        @Override
+        public void computeFrame(double fraction, ComponentState start, ComponentState end, RenderState state) {
+            if (start == null || end == null) {
+                return;
+            }
+            state.setLocation(interpolate(start.getX(), end.getX(), fraction),
+                              interpolate(start.getY(), end.getY(), fraction));
+            state.setSize(interpolate(start.getWidth(), end.getWidth(), fraction),
+                          interpolate(start.getHeight(), end.getHeight(), fraction));
+        }
+    };
+
+    private FlyweightEffects() {
+    }
+
+    private static double interpolate(int from, int to, double fraction) {
+        return from + (to - from) * fraction;
+    }
+}
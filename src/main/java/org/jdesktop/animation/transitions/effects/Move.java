@@ -38,8 +38,6 @@ import java.awt.Point;
 import org.jdesktop.animation.transitions.ComponentState;
 import org.jdesktop.animation.transitions.Effect;
 import org.jdesktop.core.animation.timing.Animator;
-import org.jdesktop.core.animation.timing.PropertySetter;
-import org.jdesktop.core.animation.timing.TimingTarget;
 
 /**
  * Effect that moves a component from its position in the start state to its position in the end state, based on linear
@@ -49,7 +47,10 @@ import org.jdesktop.core.animation.timing.TimingTarget;
  */
 public class Move extends Effect {
 
-    private TimingTarget ps;
+    // The channel is created by the first init() and re-targeted by later
+    // ones; it animates the location of targetEffect
+    private PointChannel ps;
+    private Effect targetEffect;
 
     public Move() {
     }
@@ -67,12 +68,17 @@ public class Move extends Effect {
      */
     @Override
     public void init(Animator animator, Effect parentEffect) {
-        Effect targetEffect = (parentEffect == null) ? this : parentEffect;
-        ps = PropertySetter.getTarget(targetEffect,
-                                      "location",
-                                      new Point(getStart().getX(), getStart().getY()),
-                                      new Point(getEnd().getX(), getEnd().getY()));
-        animator.addTarget(ps);
+        targetEffect = (parentEffect == null) ? this : parentEffect;
+        if (ps == null) {
+            ps = new PointChannel(new Point(), new Point()) {
+                @Override
+                protected void set(int x, int y) {
+                    targetEffect.setLocation(x, y);
+                }
+            };
+        }
+        ps.setValues(getStart().getX(), getStart().getY(), getEnd().getX(), getEnd().getY());
+        addChannel(animator, ps);
         super.init(animator, null);
     }
 
@@ -81,6 +87,16 @@ public class Move extends Effect {
      */
     @Override
     public void cleanup(Animator animator) {
-        animator.removeTarget(ps);
+        removeChannel(animator, ps);
+    }
+
+    /**
+     * Creates a copy of this effect; the copy creates a channel of its own in its first <code>init()</code>.
+     */
+    @Override
+    public Effect createCopy() {
+        Move copy = (Move) super.createCopy();
+        copy.ps = null;
+        return copy;
     }
 }
\ No newline at end of file
@@ -37,8 +37,6 @@ import java.awt.Point;
 
 import org.jdesktop.animation.transitions.Effect;
 import org.jdesktop.core.animation.timing.Animator;
-import org.jdesktop.core.animation.timing.PropertySetter;
-import org.jdesktop.core.animation.timing.TimingTargetAdapter;
 
 /**
  * Effect that moves a component to its end location from a specified starting point
@@ -46,7 +44,10 @@ import org.jdesktop.core.animation.timing.TimingTargetAdapter;
 public class MoveIn extends Effect {
 
     private Point startLocation = new Point();
-    private TimingTargetAdapter ps;
+    // The channel is created by the first init() and re-targeted by later
+    // ones; it animates the location of targetEffect
+    private PointChannel ps;
+    private Effect targetEffect;
 
     public MoveIn(int x, int y) {
         startLocation.x = x;
@@ -58,10 +59,17 @@ public class MoveIn extends Effect {
      */
     @Override
     public void init(Animator animator, Effect parentEffect) {
-        Effect targetEffect = (parentEffect == null) ? this : parentEffect;
-        ps = PropertySetter.getTarget(targetEffect, "location", startLocation, new Point(getEnd().getX(),
-                                                                                         getEnd().getY()));
-        animator.addTarget(ps);
+        targetEffect = (parentEffect == null) ? this : parentEffect;
+        if (ps == null) {
+            ps = new PointChannel(new Point(), new Point()) {
+                @Override
+                protected void set(int x, int y) {
+                    targetEffect.setLocation(x, y);
+                }
+            };
+        }
+        ps.setValues(startLocation.x, startLocation.y, getEnd().getX(), getEnd().getY());
+        addChannel(animator, ps);
         super.init(animator, parentEffect);
     }
 
@@ -70,6 +78,16 @@ public class MoveIn extends Effect {
      */
     @Override
     public void cleanup(Animator animator) {
-        animator.removeTarget(ps);
+        removeChannel(animator, ps);
+    }
+
+    /**
+     * Creates a copy of this effect; the copy creates a channel of its own in its first <code>init()</code>.
+     */
+    @Override
+    public Effect createCopy() {
+        MoveIn copy = (MoveIn) super.createCopy();
+        copy.ps = null;
+        return copy;
     }
 }
@@ -37,8 +37,6 @@ import java.awt.Point;
 
 import org.jdesktop.animation.transitions.Effect;
 import org.jdesktop.core.animation.timing.Animator;
-import org.jdesktop.core.animation.timing.PropertySetter;
-import org.jdesktop.core.animation.timing.TimingTargetAdapter;
 
 /**
  * Effect that moves a component from its starting location to a specified end point
@@ -46,7 +44,10 @@ import org.jdesktop.core.animation.timing.TimingTargetAdapter;
 public class MoveOut extends Effect {
 
     private Point endLocation = new Point();
-    private TimingTargetAdapter ps;
+    // The channel is created by the first init() and re-targeted by later
+    // ones; it animates the location of targetEffect
+    private PointChannel ps;
+    private Effect targetEffect;
 
     public MoveOut(int x, int y) {
         endLocation.x = x;
@@ -58,12 +59,17 @@ public class MoveOut extends Effect {
      */
     @Override
     public void init(Animator animator, Effect parentEffect) {
-        Effect targetEffect = (parentEffect == null) ? this : parentEffect;
-        ps = PropertySetter.getTarget(targetEffect,
-                                      "location",
-                                      new Point(getStart().getX(), getStart().getY()),
-                                      endLocation);
-        animator.addTarget(ps);
+        targetEffect = (parentEffect == null) ? this : parentEffect;
+        if (ps == null) {
+            ps = new PointChannel(new Point(), new Point()) {
+                @Override
+                protected void set(int x, int y) {
+                    targetEffect.setLocation(x, y);
+                }
+            };
+        }
+        ps.setValues(getStart().getX(), getStart().getY(), endLocation.x, endLocation.y);
+        addChannel(animator, ps);
         super.init(animator, parentEffect);
     }
 
@@ -72,6 +78,16 @@ public class MoveOut extends Effect {
      */
     @Override
     public void cleanup(Animator animator) {
-        animator.removeTarget(ps);
+        removeChannel(animator, ps);
+    }
+
+    /**
+     * Creates a copy of this effect; the copy creates a channel of its own in its first <code>init()</code>.
+     */
+    @Override
+    public Effect createCopy() {
+        MoveOut copy = (MoveOut) super.createCopy();
+        copy.ps = null;
+        return copy;
     }
 }
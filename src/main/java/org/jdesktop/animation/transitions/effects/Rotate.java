@@ -40,8 +40,6 @@ import javax.swing.JComponent;
 import org.jdesktop.animation.transitions.ComponentState;
 import org.jdesktop.animation.transitions.Effect;
 import org.jdesktop.core.animation.timing.Animator;
-import org.jdesktop.core.animation.timing.PropertySetter;
-import org.jdesktop.core.animation.timing.TimingTarget;
 
 /**
  * This Effect rotates a component through a given number of degrees during the animated transition.
@@ -59,7 +57,7 @@ public class Rotate extends Effect {
     // The property animated during the transition
     private double radians;
     // The animation target used to animate the radians property
-    private TimingTarget ps;
+    private DoubleChannel ps;
 
     /**
      * This property setting method is called during the transition by the animation target that this effect sets up. It
@@ -126,8 +124,15 @@ public class Rotate extends Effect {
      * the end state during the course of the transition.
      */
     public void init(Animator animator, Effect parentEffect) {
-        ps = PropertySetter.getTarget(this, "radians", 0.0, endRadians);
-        animator.addTarget(ps);
+        if (ps == null) {
+            ps = new DoubleChannel(0.0, endRadians) {
+                @Override
+                protected void set(double value) {
+                    setRadians(value);
+                }
+            };
+        }
+        addChannel(animator, ps);
         super.init(animator, null);
     }
 
@@ -136,7 +141,7 @@ public class Rotate extends Effect {
      */
     @Override
     public void cleanup(Animator animator) {
-        animator.removeTarget(ps);
+        removeChannel(animator, ps);
     }
 
     /**
@@ -149,10 +154,18 @@ public class Rotate extends Effect {
      */
     @Override
     public void setup(Graphics2D g2d) {
-        // translate back and forth to rotate around the right point
-        g2d.translate(xCenter, yCenter);
-        g2d.rotate(radians);
-        g2d.translate(-xCenter, -yCenter);
+        // rotate around the right point
+        rotate(g2d, radians, xCenter, yCenter);
         super.setup(g2d);
     }
+
+    /**
+     * Creates a copy of this effect; the copy creates a channel of its own in its first <code>init()</code>.
+     */
+    @Override
+    public Effect createCopy() {
+        Rotate copy = (Rotate) super.createCopy();
+        copy.ps = null;
+        return copy;
+    }
 }
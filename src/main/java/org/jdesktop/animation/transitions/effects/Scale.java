@@ -36,11 +36,14 @@ package org.jdesktop.animation.transitions.effects;
 import org.jdesktop.animation.transitions.ComponentState;
 import org.jdesktop.animation.transitions.Effect;
 import org.jdesktop.core.animation.timing.Animator;
-import org.jdesktop.core.animation.timing.PropertySetter;
-import org.jdesktop.core.animation.timing.TimingTarget;
 
 /**
  * Effect that resizes a component during the transition.
+ * <p/>
+ * By default, the component is laid out and painted again at its current size in every frame, which keeps text and
+ * borders crisp. For components that take long to lay out and paint, such as large tables or editor panes, the effect
+ * switches to cross-fading the snapshots of the start and end states as soon as painting turns out to be too slow;
+ * see {@link #setMorphMode(Effect.MorphMode)}.
  * 
  * @author Chet Haase
  */
@@ -50,7 +53,12 @@ public class Scale extends Effect {
     // the component. Note that the actual width/height properties are
     // in Effect itself; we are merely setting up an animation here to
     // vary those existing properties.
-    private TimingTarget psWidth, psHeight;
+    // The channels are created by the first init() and re-targeted by later
+    // ones; they animate the size of targetEffect
+    private IntChannel psWidth, psHeight;
+    private Effect targetEffect;
+
+    private MorphMode morphMode = MorphMode.AUTOMATIC;
 
     public Scale() {
         // scaling effect, by default, will re-render Component every time
@@ -66,17 +74,61 @@ public class Scale extends Effect {
         setComponentStates(start, end);
     }
 
+    /**
+     * Sets how the component is drawn while it is re-rendered (see {@link #setRenderComponent(boolean)}):
+     * {@link Effect.MorphMode#LIVE LIVE} paints it at its current size in every frame,
+     * {@link Effect.MorphMode#MORPH MORPH} cross-fades the scaled snapshots of its start and end states without
+     * painting it at all, and {@link Effect.MorphMode#AUTOMATIC AUTOMATIC} starts live and switches to morphing if
+     * painting is slow. Components that only exist at the start or the end of the transition are always painted live.
+     * The default is {@link Effect.MorphMode#AUTOMATIC AUTOMATIC}.
+     *
+     * @param morphMode
+     *            the way the component is drawn while it is re-rendered
+     * @throws IllegalArgumentException
+     *             morphMode must be non-null
+     */
+    public void setMorphMode(MorphMode morphMode) {
+        if (morphMode == null) {
+            throw new IllegalArgumentException("MorphMode must be non-null");
+        }
+        this.morphMode = morphMode;
+    }
+
+    /**
+     * Returns how the component is drawn while it is re-rendered.
+     *
+     * @see #setMorphMode(Effect.MorphMode)
+     */
+    @Override
+    public MorphMode getMorphMode() {
+        return morphMode;
+    }
+
     /**
      * Initializes the effect, adding animation targets that will scale the component of the effect from the start to
      * the end sizes during the course of the transition.
      */
     @Override
     public void init(Animator animator, Effect parentEffect) {
-        Effect targetEffect = (parentEffect == null) ? this : parentEffect;
-        psWidth = PropertySetter.getTarget(targetEffect, "width", getStart().getWidth(), getEnd().getWidth());
-        animator.addTarget(psWidth);
-        psHeight = PropertySetter.getTarget(targetEffect, "height", getStart().getHeight(), getEnd().getHeight());
-        animator.addTarget(psHeight);
+        targetEffect = (parentEffect == null) ? this : parentEffect;
+        if (psWidth == null) {
+            psWidth = new IntChannel(0, 0) {
+                @Override
+                protected void set(int value) {
+                    targetEffect.setWidth(value);
+                }
+            };
+            psHeight = new IntChannel(0, 0) {
+                @Override
+                protected void set(int value) {
+                    targetEffect.setHeight(value);
+                }
+            };
+        }
+        psWidth.setValues(getStart().getWidth(), getEnd().getWidth());
+        addChannel(animator, psWidth);
+        psHeight.setValues(getStart().getHeight(), getEnd().getHeight());
+        addChannel(animator, psHeight);
         super.init(animator, null);
     }
 
@@ -85,8 +137,18 @@ public class Scale extends Effect {
      */
     @Override
     public void cleanup(Animator animator) {
-        animator.removeTarget(psWidth);
-        animator.removeTarget(psHeight);
+        removeChannel(animator, psWidth);
+        removeChannel(animator, psHeight);
     }
 
+    /**
+     * Creates a copy of this effect; the copy creates channels of its own in its first <code>init()</code>.
+     */
+    @Override
+    public Effect createCopy() {
+        Scale copy = (Scale) super.createCopy();
+        copy.psWidth = null;
+        copy.psHeight = null;
+        return copy;
+    }
 }
@@ -0,0 +1,157 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+package org.jdesktop.animation.transitions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Point;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JLabel;
+
+import org.jdesktop.animation.transitions.effects.FadeIn;
+import org.jdesktop.animation.transitions.effects.FadeOut;
+import org.jdesktop.animation.transitions.effects.Move;
+import org.jdesktop.animation.transitions.effects.MoveIn;
+import org.jdesktop.animation.transitions.effects.MoveOut;
+import org.jdesktop.animation.transitions.effects.Rotate;
+import org.jdesktop.animation.transitions.effects.Scale;
+import org.jdesktop.core.animation.timing.Animator;
+import org.jdesktop.core.animation.timing.sources.ManualTimingSource;
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks that the default effects keep their property channels across transitions: an effect that is initialized
+ * again, as the effects recycled by {@link StatePool} are, re-targets its channels to its new states instead of
+ * creating new channels.
+ */
+public class ChannelReuseTest {
+
+    private static final int WARMUP_RUNS = 20000;
+    private static final int MEASURED_RUNS = 500;
+
+    private final Animator animator = new Animator.Builder(new ManualTimingSource()).setDuration(1, TimeUnit.SECONDS)
+            .build();
+    private final ChannelBatch batch = new ChannelBatch();
+
+    @Test
+    public void reusedChannelsAreRetargeted() {
+        RecordingMove move = new RecordingMove();
+        JLabel label = new JLabel("Label");
+
+        label.setBounds(10, 20, 50, 16);
+        move.setStart(new ComponentState(label, false));
+        label.setBounds(110, 70, 50, 16);
+        move.setEnd(new ComponentState(label, false));
+        run(move);
+        assertEquals(new Point(110, 70), move.location);
+
+        label.setBounds(30, 40, 50, 16);
+        move.setStart(new ComponentState(label, false));
+        label.setBounds(-20, 90, 50, 16);
+        move.setEnd(new ComponentState(label, false));
+        run(move);
+        assertEquals(new Point(-20, 90), move.location);
+    }
+
+    @Test
+    public void reinitializedEffectsDoNotAllocate() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("The JVM does not measure thread allocation",
+                          threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        JLabel label = new JLabel("Label");
+        label.setBounds(10, 20, 50, 16);
+        ComponentState start = new ComponentState(label, false);
+        label.setBounds(110, 70, 80, 24);
+        ComponentState end = new ComponentState(label, false);
+        Effect[] effects = { new Move(), new Scale(), new FadeIn(), new FadeOut(), new Rotate(90, 0, 0),
+                new MoveIn(-50, 0), new MoveOut(0, -50) };
+        for (Effect effect : effects) {
+            effect.setStart(start);
+            effect.setEnd(end);
+        }
+
+        runAll(effects, WARMUP_RUNS);
+        long threadId = Thread.currentThread().getId();
+        long overhead = threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        overhead = before - overhead;
+        runAll(effects, MEASURED_RUNS);
+        long after = threads.getThreadAllocatedBytes(threadId);
+
+        assertEquals("Bytes allocated by " + MEASURED_RUNS + " transitions", 0, after - before - overhead);
+    }
+
+    private void runAll(Effect[] effects, int count) {
+        for (int i = 0; i < count; i++) {
+            for (Effect effect : effects) {
+                run(effect);
+            }
+        }
+    }
+
+    /**
+     * Initializes the given effect as a transition does, runs its channels to the end and cleans it up.
+     */
+    private void run(Effect effect) {
+        batch.clear();
+        Effect.setChannelBatch(batch, animator);
+        try {
+            effect.init(animator, null);
+        } finally {
+            Effect.setChannelBatch(null, null);
+        }
+        batch.timingEvent(animator, 1.0);
+        effect.cleanup(animator);
+    }
+
+    /**
+     * A Move that records the location that its channel sets.
+     */
+    private static class RecordingMove extends Move {
+
+        final Point location = new Point();
+
+        @Override
+        public void setLocation(int x, int y) {
+            location.setLocation(x, y);
+            super.setLocation(x, y);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+
+package org.jdesktop.animation.transitions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+
+import org.jdesktop.animation.transitions.EffectsManager.TransitionType;
+import org.jdesktop.animation.transitions.effects.FadeIn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the read path of the {@link EffectsManager}, which every transition takes once per component and
+ * transition type, against the plain <code>HashMap</code> the manager used before it became thread-safe and against a
+ * synchronized map, the simplest thread-safe alternative. Half of the components have an effect, so lookups hit and
+ * miss equally often. The <code>contended</code> variants read from four threads at once.
+ * <p>
+ * Run with <code>mvn -P benchmark verify -Dbenchmark=EffectsManagerBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EffectsManagerBenchmark {
+
+    @Param({ "100", "10000" })
+    private int componentCount;
+
+    private JComponent[] components;
+    private EffectsManager effectsManager;
+    private Map<JComponent, Effect> hashMap;
+    private Map<JComponent, Effect> synchronizedMap;
+
+    /**
+     * The position of the next component to look up, per thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next(int count) {
+            next = (next + 1) % count;
+            return next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        components = new JComponent[componentCount];
+        effectsManager = new EffectsManager();
+        hashMap = new HashMap<>();
+        for (int i = 0; i < componentCount; i++) {
+            components[i] = new JLabel("Label " + i);
+            if (i % 2 == 0) {
+                Effect effect = new FadeIn();
+                effectsManager.setEffect(components[i], effect, TransitionType.CHANGING);
+                hashMap.put(components[i], effect);
+            }
+        }
+        synchronizedMap = Collections.synchronizedMap(new HashMap<>(hashMap));
+    }
+
+    @Benchmark
+    public Effect effectsManager(Cursor cursor) {
+        return effectsManager.getEffect(components[cursor.next(componentCount)], TransitionType.CHANGING);
+    }
+
+    @Benchmark
+    public Effect hashMap(Cursor cursor) {
+        return hashMap.get(components[cursor.next(componentCount)]);
+    }
+
+    @Benchmark
+    public Effect synchronizedMap(Cursor cursor) {
+        return synchronizedMap.get(components[cursor.next(componentCount)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Effect effectsManagerContended(Cursor cursor) {
+        return effectsManager(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Effect synchronizedMapContended(Cursor cursor) {
+        return synchronizedMap(cursor);
+    }
+}
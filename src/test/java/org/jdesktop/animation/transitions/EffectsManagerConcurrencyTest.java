@@ -0,0 +1,226 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+
+package org.jdesktop.animation.transitions;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+
+import org.jdesktop.animation.transitions.EffectsManager.TransitionType;
+import org.jdesktop.animation.transitions.effects.FadeIn;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link EffectsManager} can be written and read from several threads at once. Writer threads set and
+ * remove the effects of their own components while another thread keeps setting and clearing all effects of one
+ * transition type, and reader threads look up effects all the time. Readers must only ever see an effect that was set
+ * for the component they ask for, writers must always see their own latest write, and the final state must be exactly
+ * what the last writes left.
+ */
+public class EffectsManagerConcurrencyTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int COMPONENTS_PER_WRITER = 16;
+    private static final int EFFECTS_PER_COMPONENT = 3;
+    private static final int WRITES = 20000;
+    private static final int CLEARS = 2000;
+
+    private final EffectsManager effectsManager = new EffectsManager();
+    private final ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS + 1);
+
+    private final JComponent[] components = new JComponent[WRITERS * COMPONENTS_PER_WRITER];
+
+    /** The effects that may be set for each component; effects are never shared between components. */
+    private final Effect[][] effects = new Effect[components.length][EFFECTS_PER_COMPONENT];
+
+    private final CountDownLatch start = new CountDownLatch(1);
+    private final AtomicInteger runningWriters = new AtomicInteger(WRITERS + 1);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentWritesAndReads() throws Exception {
+        for (int i = 0; i < components.length; i++) {
+            components[i] = new JLabel("Label " + i);
+            for (int j = 0; j < EFFECTS_PER_COMPONENT; j++) {
+                effects[i][j] = new FadeIn();
+            }
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < WRITERS; i++) {
+            futures.add(executor.submit(writer(i)));
+        }
+        futures.add(executor.submit(clearer()));
+        for (int i = 0; i < READERS; i++) {
+            futures.add(executor.submit(reader(i)));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            // Rethrows the first failure of any thread
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        for (int i = 0; i < components.length; i++) {
+            assertSame("Final CHANGING effect of component " + i,
+                       effects[i][0],
+                       effectsManager.getEffect(components[i], TransitionType.CHANGING));
+            assertNull("Final APPEARING effect of component " + i,
+                       effectsManager.getEffect(components[i], TransitionType.APPEARING));
+            assertNull("Final DISAPPEARING effect of component " + i,
+                       effectsManager.getEffect(components[i], TransitionType.DISAPPEARING));
+        }
+    }
+
+    /**
+     * Sets and removes the CHANGING and APPEARING effects of the writer's own components at random, checking that each
+     * write is visible to the writer right away, and finally sets the first effect of every component for CHANGING and
+     * removes all APPEARING effects.
+     */
+    private Callable<Void> writer(final int writer) {
+        return new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                start.await();
+                try {
+                    Random random = new Random(writer);
+                    int first = writer * COMPONENTS_PER_WRITER;
+                    for (int i = 0; i < WRITES; i++) {
+                        int component = first + random.nextInt(COMPONENTS_PER_WRITER);
+                        TransitionType transitionType = random.nextBoolean() ? TransitionType.CHANGING
+                                : TransitionType.APPEARING;
+                        Effect effect = random.nextInt(4) == 0 ? null
+                                : effects[component][random.nextInt(EFFECTS_PER_COMPONENT)];
+                        if (effect == null) {
+                            effectsManager.removeEffect(components[component], transitionType);
+                        } else {
+                            effectsManager.setEffect(components[component], effect, transitionType);
+                        }
+                        assertSame("Effect just written for component " + component,
+                                   effect,
+                                   effectsManager.getEffect(components[component], transitionType));
+                    }
+                    for (int component = first; component < first + COMPONENTS_PER_WRITER; component++) {
+                        effectsManager.setEffect(components[component], effects[component][0], TransitionType.CHANGING);
+                        effectsManager.removeEffect(components[component], TransitionType.APPEARING);
+                    }
+                } finally {
+                    runningWriters.decrementAndGet();
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Sets a DISAPPEARING effect for a few components and then clears all DISAPPEARING effects, over and over again.
+     */
+    private Callable<Void> clearer() {
+        return new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                start.await();
+                try {
+                    for (int i = 0; i < CLEARS; i++) {
+                        for (int component = i % 4; component < components.length; component += 4) {
+                            effectsManager.setEffect(components[component],
+                                                     effects[component][i % EFFECTS_PER_COMPONENT],
+                                                     TransitionType.DISAPPEARING);
+                        }
+                        effectsManager.clearEffects(TransitionType.DISAPPEARING);
+                    }
+                } finally {
+                    runningWriters.decrementAndGet();
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Looks up the effects of all components until the writers are done, checking that every effect found is one of
+     * the effects of that component.
+     */
+    private Callable<Void> reader(final int reader) {
+        return new Callable<Void>() {
+
+            @Override
+            public Void call() throws Exception {
+                start.await();
+                TransitionType[] transitionTypes = TransitionType.values();
+                int component = reader;
+                while (runningWriters.get() > 0) {
+                    component = (component + 1) % components.length;
+                    for (TransitionType transitionType : transitionTypes) {
+                        Effect effect = effectsManager.getEffect(components[component], transitionType);
+                        if (effect != null && !isEffectOf(effect, component)) {
+                            throw new AssertionError("Component " + component + " has an effect of another component");
+                        }
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    private boolean isEffectOf(Effect effect, int component) {
+        for (Effect candidate : effects[component]) {
+            if (candidate == effect) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
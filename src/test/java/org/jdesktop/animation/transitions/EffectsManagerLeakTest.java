@@ -0,0 +1,177 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+
+package org.jdesktop.animation.transitions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.EventQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import org.jdesktop.animation.transitions.EffectsManager.EffectFactory;
+import org.jdesktop.animation.transitions.EffectsManager.TransitionType;
+import org.jdesktop.animation.transitions.effects.FadeIn;
+import org.jdesktop.animation.transitions.effects.Move;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link EffectsManager} does not keep the components of an application alive: the application
+ * rebuilds its screen 10000 times, registering effects and rules for every new component, and drops the previous
+ * screen each time. Once the old components have been collected, their entries and effects must be gone as well, and
+ * the heap must not have grown with the number of rebuilds.
+ */
+public class EffectsManagerLeakTest {
+
+    private static final int REBUILDS = 10000;
+    private static final int CHILDREN = 5;
+
+    /** Every how many rebuilds a screen is tracked through weak references. */
+    private static final int SAMPLE_INTERVAL = 100;
+
+    /** The heap may grow by this much between the early and the final measurement; a leak would be far larger. */
+    private static final long MAX_HEAP_GROWTH = 8 * 1024 * 1024;
+
+    private static final long GC_TIMEOUT_MILLIS = 10000;
+
+    private final EffectsManager effectsManager = new EffectsManager();
+    private final EffectFactory moveFactory = EffectsManager.prototypeFactory(new Move());
+
+    private final List<WeakReference<JComponent>> components = new ArrayList<>();
+    private final List<WeakReference<Effect>> effects = new ArrayList<>();
+
+    @Test
+    public void rebuiltScreensAreCollected() throws Exception {
+        for (int i = 0; i < REBUILDS / 10; i++) {
+            rebuild(i);
+        }
+        long earlyHeap = collectAndPurge();
+
+        for (int i = REBUILDS / 10; i < REBUILDS; i++) {
+            rebuild(i);
+        }
+        long finalHeap = collectAndPurge();
+
+        for (WeakReference<JComponent> component : components) {
+            assertNull("A component was not collected", component.get());
+        }
+        for (WeakReference<Effect> effect : effects) {
+            assertNull("An effect of a collected component was not collected", effect.get());
+        }
+        for (TransitionType transitionType : TransitionType.values()) {
+            assertEquals("Entries left for " + transitionType,
+                         0,
+                         effectsManager.getRules(transitionType).getComponentEntryCount());
+        }
+        assertTrue("The heap grew by " + (finalHeap - earlyHeap) + " bytes",
+                   finalHeap - earlyHeap < MAX_HEAP_GROWTH);
+    }
+
+    /**
+     * Builds a new screen and sets up the effects for it, the way an application would before each transition.
+     */
+    private void rebuild(int rebuild) {
+        JPanel container = new JPanel(null);
+        effectsManager.setContainerEffect(container, moveFactory, TransitionType.DISAPPEARING);
+        boolean sampled = rebuild % SAMPLE_INTERVAL == 0;
+        if (sampled) {
+            components.add(new WeakReference<JComponent>(container));
+        }
+        for (int i = 0; i < CHILDREN; i++) {
+            JLabel label = new JLabel("Label " + rebuild + "." + i);
+            container.add(label);
+            Effect effect = new FadeIn();
+            effectsManager.setEffect(label, effect, TransitionType.APPEARING);
+            effectsManager.setEffectFactory(label, moveFactory, TransitionType.CHANGING);
+            if (sampled) {
+                components.add(new WeakReference<JComponent>(label));
+                effects.add(new WeakReference<>(effect));
+            }
+        }
+    }
+
+    /**
+     * Waits until all tracked components have been collected and the EffectsManager has purged the entries of all
+     * collected components, lets it release their effects on the EDT, and then waits until the tracked effects have
+     * been collected too. Not every component is tracked, so the purge is repeated until no entries are left.
+     *
+     * @return the used heap afterwards, in bytes
+     */
+    private long collectAndPurge() throws Exception {
+        awaitCollection(components);
+        long deadline = System.currentTimeMillis() + GC_TIMEOUT_MILLIS;
+        effectsManager.purgeCollectedComponents();
+        while (getComponentEntryCount() > 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+            effectsManager.purgeCollectedComponents();
+        }
+        EventQueue.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                // Runs after the release of the purged effects' images
+            }
+        });
+        awaitCollection(effects);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private int getComponentEntryCount() {
+        int count = 0;
+        for (TransitionType transitionType : TransitionType.values()) {
+            count += effectsManager.getRules(transitionType).getComponentEntryCount();
+        }
+        return count;
+    }
+
+    private static void awaitCollection(List<? extends WeakReference<?>> references) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + GC_TIMEOUT_MILLIS;
+        for (WeakReference<?> reference : references) {
+            while (reference.get() != null && System.currentTimeMillis() < deadline) {
+                System.gc();
+                Thread.sleep(10);
+            }
+        }
+    }
+}
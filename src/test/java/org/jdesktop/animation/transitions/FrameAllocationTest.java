@@ -0,0 +1,220 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+
+package org.jdesktop.animation.transitions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import org.jdesktop.core.animation.timing.Animator;
+import org.jdesktop.core.animation.timing.sources.ManualTimingSource;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks that the frame loop of a running transition allocates nothing once it is warmed up: advancing the property
+ * channels of all effects and painting the frame with {@link AnimationManager#paint(Graphics2D, Rectangle)}, or, for
+ * a transition composed by {@link FramePipeline}, capturing the frame on the EDT with
+ * {@link AnimationManager#capture(Graphics2D, FramePipeline.Frame)}. The transition moves, fades out and fades in a
+ * few hundred components, which covers the default effects that are rendered from snapshots.
+ */
+public class FrameAllocationTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final int COLUMNS = 20;
+    private static final int ROWS = 15;
+
+    private static final int WARMUP_FRAMES = 2000;
+    private static final int MEASURED_FRAMES = 600;
+
+    private ThreadMXBean threads;
+    private JPanel container;
+    private AnimationManager animationManager;
+    private Animator animator;
+    private BufferedImage image;
+    private Graphics2D g;
+    private final Rectangle dirtyRegion = new Rectangle();
+    private FramePipeline.Frame pipelineFrame;
+    private Graphics2D captureGraphics;
+
+    @Before
+    public void setUp() {
+        threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("The JVM does not measure thread allocation",
+                          threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        container = new JPanel(null);
+        container.setSize(WIDTH, HEIGHT);
+        List<JComponent> children = new ArrayList<>();
+        for (int i = 0; i < COLUMNS * ROWS; i++) {
+            JLabel label = new JLabel("Label " + i);
+            label.setOpaque(i % 2 == 0);
+            label.setBounds(cell(i % COLUMNS, i / COLUMNS));
+            container.add(label);
+            children.add(label);
+        }
+
+        SurfacePool surfacePool = new LruSurfacePool(LruSurfacePool.DEFAULT_MAX_BYTES);
+        animationManager = new AnimationManager(new EffectsManager(), container, surfacePool, surfacePool);
+        animationManager.recreateImage(new Rectangle(0, 0, WIDTH, HEIGHT));
+        animationManager.setupStart();
+
+        // The end screen: a third of the labels move one cell to the right,
+        // a third disappear and the rest stay; new labels appear as well
+        for (int i = 0; i < children.size(); i++) {
+            JComponent child = children.get(i);
+            if (i % 3 == 0) {
+                child.setBounds(cell((i + 1) % COLUMNS, i / COLUMNS));
+            } else if (i % 3 == 1) {
+                container.remove(child);
+            }
+        }
+        for (int i = 0; i < COLUMNS * ROWS / 3; i++) {
+            JLabel label = new JLabel("New " + i);
+            Rectangle bounds = cell(i % COLUMNS, i / COLUMNS);
+            bounds.translate(0, 20);
+            label.setBounds(bounds);
+            container.add(label);
+        }
+        animationManager.setupEnd();
+
+        animator = new Animator.Builder(new ManualTimingSource()).setDuration(1, TimeUnit.SECONDS).build();
+        animationManager.init(animator);
+
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @After
+    public void tearDown() {
+        if (animationManager != null) {
+            animationManager.reset(animator);
+            g.dispose();
+            if (captureGraphics != null) {
+                captureGraphics.dispose();
+            }
+        }
+    }
+
+    @Test
+    public void fullFramesDoNotAllocate() {
+        assertNoAllocation();
+    }
+
+    @Test
+    public void incrementalFramesDoNotAllocate() {
+        animationManager.setIncrementalPainting(true);
+        assertNoAllocation();
+    }
+
+    @Test
+    public void pipelinedFramesDoNotAllocate() {
+        assertTrue("The transition cannot be composed off the EDT", animationManager.canComposeOffscreen());
+        // Captured like FramePipeline does, into a frame and with the
+        // graphics of a small private image
+        pipelineFrame = new FramePipeline.Frame();
+        captureGraphics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        assertNoAllocation();
+    }
+
+    private void assertNoAllocation() {
+        assertTrue("The frames do not change during the transition", framesChange());
+        runFrames(WARMUP_FRAMES);
+
+        long threadId = Thread.currentThread().getId();
+        long overhead = threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        overhead = before - overhead;
+        runFrames(MEASURED_FRAMES);
+        long after = threads.getThreadAllocatedBytes(threadId);
+
+        assertEquals("Bytes allocated by " + MEASURED_FRAMES + " frames", 0, after - before - overhead);
+    }
+
+    /**
+     * Runs the given number of frames, going back and forth through the middle of the transition. The frames are
+     * captured into the pipeline frame if there is one, and painted otherwise.
+     */
+    private void runFrames(int count) {
+        ChannelBatch channelBatch = animationManager.getChannelBatch();
+        for (int i = 0; i < count; i++) {
+            int step = i % 200;
+            double fraction = 0.1 + 0.8 * (step < 100 ? step : 200 - step) / 100;
+            channelBatch.timingEvent(animator, fraction);
+            if (pipelineFrame != null) {
+                pipelineFrame.reset();
+                animationManager.capture(captureGraphics, pipelineFrame);
+            } else {
+                animationManager.paint(g, dirtyRegion);
+            }
+        }
+    }
+
+    /**
+     * Returns whether a frame early in the transition differs from one late in the transition, to make sure that the
+     * measured frames actually animate something.
+     */
+    private boolean framesChange() {
+        ChannelBatch channelBatch = animationManager.getChannelBatch();
+        channelBatch.timingEvent(animator, 0.1);
+        animationManager.paint(g, dirtyRegion);
+        int[] early = image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        channelBatch.timingEvent(animator, 0.9);
+        animationManager.paint(g, dirtyRegion);
+        int[] late = image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+        return !Arrays.equals(early, late);
+    }
+
+    private static Rectangle cell(int column, int row) {
+        return new Rectangle(column * (WIDTH / COLUMNS), row * (HEIGHT / ROWS), WIDTH / COLUMNS - 4, 16);
+    }
+}
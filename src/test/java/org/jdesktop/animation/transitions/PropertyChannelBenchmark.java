@@ -0,0 +1,132 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.Point;
+import java.util.concurrent.TimeUnit;
+
+import org.jdesktop.animation.transitions.Effect.FloatChannel;
+import org.jdesktop.animation.transitions.Effect.PointChannel;
+import org.jdesktop.animation.transitions.effects.FadeIn;
+import org.jdesktop.core.animation.timing.Animator;
+import org.jdesktop.core.animation.timing.PropertySetter;
+import org.jdesktop.core.animation.timing.TimingTarget;
+import org.jdesktop.core.animation.timing.sources.ManualTimingSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of one timing event when the properties of the effects are animated by one
+ * <code>PropertySetter</code> target per property, as effects used to do, with the cost when they are animated by
+ * property channels in a single {@link ChannelBatch}. Each effect animates its location and its opacity, like a
+ * component that moves and fades in at the same time.
+ * <p>
+ * Run with <code>mvn -P benchmark verify</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyChannelBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int effectCount;
+
+    private Animator animator;
+    private TimingTarget[] propertySetters;
+    private ChannelBatch channelBatch;
+    private double fraction;
+
+    @Setup
+    public void setUp() {
+        animator = new Animator.Builder(new ManualTimingSource()).setDuration(1, TimeUnit.SECONDS).build();
+        propertySetters = new TimingTarget[effectCount * 2];
+        channelBatch = new ChannelBatch();
+        for (int i = 0; i < effectCount; i++) {
+            final FadeIn effect = new FadeIn();
+            Point start = new Point(i, 0);
+            Point end = new Point(i + 100, 100);
+            propertySetters[i * 2] = PropertySetter.getTarget(effect, "location", start, end);
+            propertySetters[i * 2 + 1] = PropertySetter.getTarget(effect, "opacity", 0f, 1f);
+            channelBatch.add(new PointChannel(start, end) {
+                @Override
+                protected void set(int x, int y) {
+                    effect.setLocation(x, y);
+                }
+            });
+            channelBatch.add(new FloatChannel(0f, 1f) {
+                @Override
+                protected void set(float value) {
+                    effect.setOpacity(value);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void propertySetters() {
+        double fraction = nextFraction();
+        for (TimingTarget target : propertySetters) {
+            target.timingEvent(animator, fraction);
+        }
+    }
+
+    @Benchmark
+    public void channelBatch() {
+        channelBatch.timingEvent(animator, nextFraction());
+    }
+
+    /**
+     * Returns the fraction of the next timing event, running through the transition over and over again.
+     */
+    private double nextFraction() {
+        fraction += 0.001;
+        if (fraction > 1) {
+            fraction = 0;
+        }
+        return fraction;
+    }
+}
@@ -0,0 +1,117 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+
+package org.jdesktop.animation.transitions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import org.jdesktop.core.animation.timing.Animator;
+import org.jdesktop.core.animation.timing.sources.ManualTimingSource;
+import org.junit.Test;
+
+/**
+ * Checks that no snapshot is taken of the end state of a component that moves and grows: its default effect, a
+ * composite of Move and Scale, re-renders the live component, so neither the composite nor its Move sub-effect may
+ * capture an image that would never be drawn. This includes components whose start state was outside the visible area,
+ * for which the end state is the only one that could have been captured.
+ */
+public class SkippedSnapshotTest {
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final int VISIBLE_COUNT = 20;
+    private static final int OFFSCREEN_COUNT = 5;
+
+    @Test
+    public void liveRenderedStatesAreNotCaptured() {
+        JPanel container = new JPanel(null);
+        container.setSize(WIDTH, HEIGHT);
+        List<JLabel> labels = new ArrayList<>();
+        for (int i = 0; i < VISIBLE_COUNT + OFFSCREEN_COUNT; i++) {
+            JLabel label = new JLabel("Label " + i);
+            label.setOpaque(true);
+            if (i < VISIBLE_COUNT) {
+                label.setBounds(10, i * 25, 100, 20);
+            } else {
+                label.setBounds(WIDTH + 10, i * 20, 100, 20);
+            }
+            container.add(label);
+            labels.add(label);
+        }
+
+        SurfacePool surfacePool = new LruSurfacePool(LruSurfacePool.DEFAULT_MAX_BYTES);
+        AnimationManager animationManager = new AnimationManager(new EffectsManager(),
+                                                                 container,
+                                                                 surfacePool,
+                                                                 surfacePool);
+        animationManager.recreateImage(new Rectangle(0, 0, WIDTH, HEIGHT));
+        animationManager.setupStart();
+        // Every label moves into the visible area and grows
+        for (int i = 0; i < labels.size(); i++) {
+            labels.get(i).setBounds(200, i * 22, 150, 21);
+        }
+        animationManager.setupEnd();
+        Animator animator = new Animator.Builder(new ManualTimingSource()).setDuration(1, TimeUnit.SECONDS).build();
+        animationManager.init(animator);
+
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        Rectangle dirtyRegion = new Rectangle();
+        ChannelBatch channelBatch = animationManager.getChannelBatch();
+        for (int frame = 0; frame <= 10; frame++) {
+            channelBatch.timingEvent(animator, frame / 10.0);
+            animationManager.paint(g, dirtyRegion);
+        }
+
+        for (int i = 0; i < labels.size(); i++) {
+            AnimationState state = animationManager.getExistingAnimationState(labels.get(i));
+            assertFalse("The end state of label " + i + " has a snapshot", state.getEnd().hasSnapshot());
+        }
+        assertEquals("Skipped snapshots", labels.size() + OFFSCREEN_COUNT, animationManager.getSkippedSnapshotCount());
+
+        animationManager.reset(animator);
+        g.dispose();
+    }
+}
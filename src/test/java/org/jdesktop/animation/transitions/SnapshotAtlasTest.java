@@ -0,0 +1,85 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+
+package org.jdesktop.animation.transitions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import org.junit.Test;
+
+/**
+ * Checks that the snapshots of opaque components are captured into opaque atlases, so that they are drawn without
+ * blending, and those of all other components into translucent atlases.
+ */
+public class SnapshotAtlasTest {
+
+    @Test
+    public void opaqueComponentsGetOpaqueSnapshots() {
+        JPanel container = new JPanel(null);
+        container.setSize(400, 300);
+        List<ComponentState> states = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            JLabel label = new JLabel("Label " + i);
+            label.setOpaque(i % 2 == 0);
+            label.setBounds(10, i * 25, 100, 20);
+            container.add(label);
+            states.add(new ComponentState(label, false));
+        }
+
+        List<BufferedImage> atlases = new ArrayList<>();
+        SurfacePool surfacePool = new LruSurfacePool(LruSurfacePool.DEFAULT_MAX_BYTES);
+        SnapshotAtlas.capture(states, container, surfacePool, atlases);
+
+        assertEquals("Atlases", 2, atlases.size());
+        for (int i = 0; i < states.size(); i++) {
+            ComponentState state = states.get(i);
+            int expected = state.getComponent().isOpaque() ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+            BufferedImage snapshot = (BufferedImage) state.getSnapshot();
+            assertEquals("Transparency of the snapshot of label " + i,
+                         expected,
+                         snapshot.getTransparency());
+        }
+        for (BufferedImage atlas : atlases) {
+            surfacePool.release(atlas);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+
+package org.jdesktop.animation.transitions;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link StateIndex} and {@link StateStore} with the linear passes and the <code>HashMap</code> they replaced
+ * in <code>AnimationManager</code>, for containers of 100, 1000 and 10000 moving children:
+ * <ul>
+ * <li>culling the states outside the visible area of the container when a transition starts,</li>
+ * <li>finding the states under the damaged areas of an incremental frame,</li>
+ * <li>recording the states of a transition and dropping those that are culled.</li>
+ * </ul>
+ * Run with <code>mvn -P benchmark verify -Dbenchmark=StateIndexBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateIndexBenchmark {
+
+    private static final int CELL_WIDTH = 40;
+    private static final int CELL_HEIGHT = 24;
+    private static final int DAMAGED_AREA_COUNT = 8;
+
+    @Param({ "100", "1000", "10000" })
+    private int childCount;
+
+    private final List<AnimationState> states = new ArrayList<>();
+    private final Map<JComponent, AnimationState> stateMap = new HashMap<>();
+    private Rectangle containerArea;
+    private Rectangle visibleArea;
+    private final Rectangle[] damagedAreas = new Rectangle[DAMAGED_AREA_COUNT];
+
+    private final StateStore stateStore = new StateStore();
+    private final StateIndex cullingIndex = new StateIndex();
+    private final StateIndex queryIndex = new StateIndex();
+    private final Rectangle stateBounds = new Rectangle();
+
+    @Setup
+    public void setUp() {
+        int columns = (int) Math.ceil(Math.sqrt(childCount));
+        int rows = (childCount + columns - 1) / columns;
+        containerArea = new Rectangle(0, 0, columns * CELL_WIDTH, rows * CELL_HEIGHT);
+        visibleArea = new Rectangle(0, 0, containerArea.width / 2, containerArea.height / 2);
+        for (int i = 0; i < DAMAGED_AREA_COUNT; i++) {
+            damagedAreas[i] = new Rectangle(containerArea.width * i / DAMAGED_AREA_COUNT,
+                                            containerArea.height * i / DAMAGED_AREA_COUNT,
+                                            CELL_WIDTH * 3 / 2,
+                                            CELL_HEIGHT * 3 / 2);
+        }
+
+        // Every child moves a little to the lower right during the transition
+        for (int i = 0; i < childCount; i++) {
+            JLabel label = new JLabel("Label " + i);
+            label.setBounds((i % columns) * CELL_WIDTH, (i / columns) * CELL_HEIGHT, CELL_WIDTH - 4, CELL_HEIGHT - 4);
+            AnimationState state = new AnimationState(new ComponentState(label, false), true);
+            label.setLocation(label.getX() + CELL_WIDTH / 4, label.getY() + CELL_HEIGHT / 4);
+            state.setEnd(new ComponentState(label, false));
+            states.add(state);
+            stateMap.put(label, state);
+        }
+        queryIndex.build(states, containerArea);
+    }
+
+    @Benchmark
+    public int cullWithIndex() {
+        cullingIndex.build(states, containerArea);
+        cullingIndex.markBounds(visibleArea);
+        cullingIndex.retainMarked();
+        return cullingIndex.size();
+    }
+
+    /**
+     * The culling loop that <code>AnimationManager.init()</code> used before the states were indexed.
+     */
+    @Benchmark
+    public int cullWithLoop() {
+        List<JComponent> componentsToRemove = new ArrayList<>();
+        for (AnimationState state : stateMap.values()) {
+            Rectangle bounds = null;
+            if (state.hasStart()) {
+                ComponentState start = state.getStart();
+                bounds = new Rectangle(start.getX(), start.getY(), start.getWidth(), start.getHeight());
+            }
+            if (state.hasEnd()) {
+                ComponentState end = state.getEnd();
+                Rectangle boundsEnd = new Rectangle(end.getX(), end.getY(), end.getWidth(), end.getHeight());
+                if (bounds == null) {
+                    bounds = boundsEnd;
+                } else {
+                    bounds = bounds.union(boundsEnd);
+                }
+            }
+            if (bounds != null && !bounds.intersects(visibleArea)) {
+                componentsToRemove.add(state.getComponent());
+            }
+        }
+        return stateMap.size() - componentsToRemove.size();
+    }
+
+    @Benchmark
+    public int queryWithIndex() {
+        queryIndex.clearMarks();
+        for (Rectangle damagedArea : damagedAreas) {
+            queryIndex.markBounds(damagedArea);
+        }
+        int marked = 0;
+        for (int i = 0; i < queryIndex.size(); i++) {
+            if (queryIndex.isMarked(i)) {
+                marked++;
+            }
+        }
+        return marked;
+    }
+
+    /**
+     * Tests every state against every damaged area, as incremental frames did before the states were indexed.
+     */
+    @Benchmark
+    public int queryWithLoop() {
+        int marked = 0;
+        for (AnimationState state : states) {
+            state.getBounds(stateBounds);
+            for (Rectangle damagedArea : damagedAreas) {
+                if (stateBounds.intersects(damagedArea)) {
+                    marked++;
+                    break;
+                }
+            }
+        }
+        return marked;
+    }
+
+    @Benchmark
+    public int recordWithStateStore() {
+        stateStore.clear();
+        for (AnimationState state : states) {
+            stateStore.add(state);
+        }
+        for (int i = 0; i < childCount; i += 2) {
+            stateStore.removeComponent(states.get(i).getComponent());
+        }
+        int count = 0;
+        for (AnimationState state : stateStore) {
+            if (state.hasEnd()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records the states in a <code>HashMap</code> and a list of changing components, and drops the culled ones from
+     * both, as <code>AnimationManager</code> did before it used a <code>StateStore</code>.
+     */
+    @Benchmark
+    public int recordWithHashMap() {
+        Map<JComponent, AnimationState> map = new HashMap<>();
+        List<JComponent> changingComponents = new ArrayList<>();
+        for (AnimationState state : states) {
+            map.put(state.getComponent(), state);
+            changingComponents.add(state.getComponent());
+        }
+        for (int i = 0; i < childCount; i += 2) {
+            JComponent component = states.get(i).getComponent();
+            map.remove(component);
+            changingComponents.remove(component);
+        }
+        int count = 0;
+        for (AnimationState state : map.values()) {
+            if (state.hasEnd()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,146 @@
+//@formatter:off
+/*
+ * Copyright 2007 Sun Microsystems, Inc.  All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ *   - Redistributions of source code must retain the above copyright
+ *     notice, this list of conditions and the following disclaimer.
+ *
+ *   - Redistributions in binary form must reproduce the above copyright
+ *     notice, this list of conditions and the following disclaimer in the
+ *     documentation and/or other materials provided with the distribution.
+ *
+ *   - Neither the name of Sun Microsystems nor the names of its
+ *     contributors may be used to endorse or promote products derived
+ *     from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS
+ * IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR
+ * PURPOSE ARE DISCLAIMED.  IN NO EVENT SHALL THE COPYRIGHT OWNER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL,
+ * EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,
+ * PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF
+ * LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+//@formatter:on
+
+
+package org.jdesktop.animation.transitions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+import org.jdesktop.animation.transitions.EffectsManager.TransitionType;
+import org.jdesktop.animation.transitions.effects.FlyweightEffects;
+import org.jdesktop.core.animation.timing.Animator;
+import org.jdesktop.core.animation.timing.sources.ManualTimingSource;
+import org.junit.Test;
+
+/**
+ * Checks that the adapters of a stateless effect are recycled: a transition that is run again reuses the adapters of
+ * the previous run instead of creating new ones, and each transition computes its frames into its own
+ * {@link RenderState}.
+ */
+public class StatelessEffectPoolTest {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 300;
+    private static final int LABELS = 10;
+
+    private final EffectsManager effectsManager = new EffectsManager();
+    private final Animator animator = new Animator.Builder(new ManualTimingSource()).setDuration(1, TimeUnit.SECONDS)
+            .build();
+
+    @Test
+    public void adaptersAreReused() {
+        effectsManager.setClassEffect(JLabel.class,
+                                      EffectsManager.statelessFactory(FlyweightEffects.FADE_IN),
+                                      TransitionType.APPEARING);
+        Screen screen = new Screen();
+
+        Set<Effect> first = screen.runAppearingTransition();
+        Set<Effect> second = screen.runAppearingTransition();
+
+        assertEquals("Adapters of the first transition", LABELS, first.size());
+        assertEquals("Adapters of the second transition", first, second);
+        for (Effect effect : first) {
+            assertTrue("Not a stateless adapter: " + effect, effect instanceof StatelessEffectAdapter);
+        }
+
+        Set<Effect> other = new Screen().runAppearingTransition();
+        StatelessEffectAdapter adapter = (StatelessEffectAdapter) first.iterator().next();
+        StatelessEffectAdapter otherAdapter = (StatelessEffectAdapter) other.iterator().next();
+        assertNotSame("Render state shared between transitions",
+                      adapter.getRenderState(),
+                      otherAdapter.getRenderState());
+    }
+
+    /**
+     * A container with its own AnimationManager, whose labels appear in every transition.
+     */
+    private class Screen {
+
+        private final JPanel container = new JPanel(null);
+        private final List<JLabel> labels = new ArrayList<>();
+        private final AnimationManager animationManager;
+        private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+        Screen() {
+            container.setSize(WIDTH, HEIGHT);
+            for (int i = 0; i < LABELS; i++) {
+                JLabel label = new JLabel("Label " + i);
+                label.setBounds(10, i * 25, 100, 20);
+                labels.add(label);
+            }
+            SurfacePool surfacePool = new LruSurfacePool(LruSurfacePool.DEFAULT_MAX_BYTES);
+            animationManager = new AnimationManager(effectsManager, container, surfacePool, surfacePool);
+            animationManager.recreateImage(new Rectangle(0, 0, WIDTH, HEIGHT));
+        }
+
+        /**
+         * Runs a transition from the empty container to the one with all labels, and returns the effects it used.
+         */
+        Set<Effect> runAppearingTransition() {
+            container.removeAll();
+            animationManager.setupStart();
+            for (JLabel label : labels) {
+                container.add(label);
+            }
+            animationManager.setupEnd();
+            animationManager.init(animator);
+
+            Graphics2D g = image.createGraphics();
+            animationManager.getChannelBatch().timingEvent(animator, 0.5);
+            animationManager.paint(g, new Rectangle());
+            g.dispose();
+
+            Set<Effect> effects = Collections.newSetFromMap(new IdentityHashMap<Effect, Boolean>());
+            for (JLabel label : labels) {
+                effects.add(animationManager.getExistingAnimationState(label).getEffect());
+            }
+            animationManager.reset(animator);
+            return effects;
+        }
+    }
+}